@@ -1,9 +1,14 @@
 package com.ka.identity_service;
 
+import com.ka.identity_service.configuration.IdentityRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(IdentityRuntimeHints.class)
 public class IdentityServiceApplication {
 
 	public static void main(String[] args) {
@@ -3,6 +3,7 @@ package com.ka.identity_service.configuration;
 import com.ka.identity_service.entity.User;
 import com.ka.identity_service.enums.Role;
 import com.ka.identity_service.repository.UserRepository;
+import com.ka.identity_service.service.WarmUpService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -46,4 +47,13 @@ public class ApplicationInitConfig {
         };
     }
 
+    // Warm-up JIT / cache trước khi nhận traffic
+    // Spring Boot chỉ chuyển readiness sang ACCEPTING_TRAFFIC sau khi mọi ApplicationRunner chạy xong,
+    // nên /actuator/health/readiness chỉ UP khi warm-up đã kết thúc
+    @Bean
+    @ConditionalOnProperty(prefix = "app.warm-up", name = "enabled", havingValue = "true", matchIfMissing = true)
+    ApplicationRunner warmUpRunner(WarmUpService warmUpService){
+        return args -> warmUpService.warmUp();
+    }
+
 }
@@ -0,0 +1,44 @@
+package com.ka.identity_service.configuration;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Đánh số các authority (ROLE_xxx, permission) trong phạm vi process
+// Bitset chỉ dùng trong bộ nhớ (không nằm trong token) nên index không cần giống nhau giữa các instance
+// Index đã cấp không bao giờ thay đổi → bitset đã tính có thể cache lâu dài
+@Component
+public class AuthorityIndex {
+
+    private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public int indexOf(String authority) {
+        Integer index = indexes.get(authority);
+        return index != null ? index : indexes.computeIfAbsent(authority, key -> next.getAndIncrement());
+    }
+
+    public long[] toBits(Collection<? extends GrantedAuthority> authorities) {
+        long[] bits = new long[0];
+        for (GrantedAuthority authority : authorities) {
+            if (authority.getAuthority() == null)
+                continue;
+            int index = indexOf(authority.getAuthority());
+            int word = index >>> 6;
+            if (word >= bits.length)
+                bits = Arrays.copyOf(bits, word + 1);
+            bits[word] |= 1L << index;
+        }
+        return bits;
+    }
+
+    public static boolean hasBit(long[] bits, int index) {
+        int word = index >>> 6;
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+}
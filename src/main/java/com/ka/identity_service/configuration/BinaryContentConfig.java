@@ -0,0 +1,29 @@
+package com.ka.identity_service.configuration;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+// Response / request body dạng nhị phân cho caller nội bộ, áp dụng cho mọi controller:
+// - Accept / Content-Type: application/cbor → CBOR
+// - Accept / Content-Type: application/x-jackson-smile → Smile
+// Mapper được tạo từ Jackson2ObjectMapperBuilder của Spring Boot nên cùng cấu hình với JSON (module, spring.jackson.*)
+// Spring Boot đặt 2 converter này vào vị trí mặc định, sau converter JSON:
+// request không có Accept hoặc Accept: */* vẫn nhận JSON
+@Configuration
+public class BinaryContentConfig {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,106 @@
+package com.ka.identity_service.configuration;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+ * AuthorizationManager cho @PreAuthorize
+ * - Các biểu thức đơn giản: hasAuthority('X'), hasAnyAuthority('X','Y'), hasRole('X'), hasAnyRole(...)
+ *   được "biên dịch" một lần cho mỗi method thành danh sách bit index
+ *   → mỗi lần gọi chỉ là vài phép AND bit trên BitsetJwtAuthenticationToken, không chạy SpEL
+ * - Biểu thức khác (vd: so sánh với #param) vẫn dùng PreAuthorizeAuthorizationManager mặc định
+ */
+public class BitsetAuthorizationManager implements AuthorizationManager<MethodInvocation> {
+
+    private static final Pattern SIMPLE_EXPRESSION =
+            Pattern.compile("\\s*(hasAuthority|hasAnyAuthority|hasRole|hasAnyRole)\\(\\s*('[^']*'(?:\\s*,\\s*'[^']*')*)\\s*\\)\\s*");
+    private static final Pattern QUOTED = Pattern.compile("'([^']*)'");
+
+    private final AuthorityIndex authorityIndex;
+    private final PreAuthorizeAuthorizationManager spelManager = new PreAuthorizeAuthorizationManager();
+
+    // Method → biểu thức đã biên dịch (null khi phải dùng SpEL)
+    private final Map<Method, Compiled> compiled = new ConcurrentHashMap<>();
+
+    // Compiled không có authority nào: dùng SpEL
+    private static final Compiled SPEL = new Compiled(new int[0], Set.of());
+
+    private record Compiled(int[] indexes, Set<String> names) {
+    }
+
+    public BitsetAuthorizationManager(AuthorityIndex authorityIndex) {
+        this.authorityIndex = authorityIndex;
+    }
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, MethodInvocation invocation) {
+        Compiled expression = compiled.computeIfAbsent(invocation.getMethod(), method -> compile(method, invocation.getThis()));
+        if (expression == SPEL)
+            return spelManager.check(authentication, invocation);
+        return new AuthorizationDecision(isGranted(authentication.get(), expression));
+    }
+
+    private boolean isGranted(Authentication authentication, Compiled expression) {
+        if (authentication == null || !authentication.isAuthenticated())
+            return false;
+
+        if (authentication instanceof BitsetJwtAuthenticationToken token) {
+            for (int index : expression.indexes()) {
+                if (token.hasAuthorityBit(index))
+                    return true;
+            }
+            return false;
+        }
+
+        // Authentication khác (vd: test dùng @WithMockUser) → so sánh theo tên
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (expression.names().contains(authority.getAuthority()))
+                return true;
+        }
+        return false;
+    }
+
+    private Compiled compile(Method method, Object target) {
+        Class<?> targetClass = target != null ? AopUtils.getTargetClass(target) : method.getDeclaringClass();
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+
+        PreAuthorize preAuthorize = AnnotatedElementUtils.findMergedAnnotation(specificMethod, PreAuthorize.class);
+        if (preAuthorize == null)
+            preAuthorize = AnnotatedElementUtils.findMergedAnnotation(targetClass, PreAuthorize.class);
+        if (preAuthorize == null)
+            return SPEL;
+
+        Matcher matcher = SIMPLE_EXPRESSION.matcher(preAuthorize.value());
+        if (!matcher.matches())
+            return SPEL;
+
+        boolean isRole = matcher.group(1).endsWith("Role");
+        Set<String> names = QUOTED.matcher(matcher.group(2)).results()
+                .map(result -> result.group(1))
+                .map(name -> isRole && !name.startsWith("ROLE_") ? "ROLE_" + name : name)
+                .collect(Collectors.toUnmodifiableSet());
+        if (names.isEmpty())
+            return SPEL;
+
+        int[] indexes = names.stream().mapToInt(authorityIndex::indexOf).toArray();
+        Arrays.sort(indexes);
+        return new Compiled(indexes, names);
+    }
+}
@@ -0,0 +1,23 @@
+package com.ka.identity_service.configuration;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+// Convert JWT → BitsetJwtAuthenticationToken
+// Authority list và bitset lấy từ cache của JwtAuthoritiesConverter
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class BitsetJwtAuthenticationConverter implements Converter<Jwt, AbstractAuthenticationToken> {
+
+    JwtAuthoritiesConverter jwtAuthoritiesConverter;
+
+    @Override
+    public AbstractAuthenticationToken convert(Jwt jwt) {
+        var authoritySet = jwtAuthoritiesConverter.convertToSet(jwt);
+        return new BitsetJwtAuthenticationToken(jwt, authoritySet.authorities(), authoritySet.bits());
+    }
+}
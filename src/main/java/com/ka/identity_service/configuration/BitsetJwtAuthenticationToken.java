@@ -0,0 +1,23 @@
+package com.ka.identity_service.configuration;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.util.Collection;
+
+// JwtAuthenticationToken kèm bitset của các authority (đánh số bởi AuthorityIndex)
+// hasAuthority('X') chỉ còn là một phép AND bit, không phải duyệt collection
+public class BitsetJwtAuthenticationToken extends JwtAuthenticationToken {
+
+    private final long[] authorityBits;
+
+    public BitsetJwtAuthenticationToken(Jwt jwt, Collection<? extends GrantedAuthority> authorities, long[] authorityBits) {
+        super(jwt, authorities, jwt.getSubject());
+        this.authorityBits = authorityBits;
+    }
+
+    public boolean hasAuthorityBit(int index) {
+        return AuthorityIndex.hasBit(authorityBits, index);
+    }
+}
@@ -1,93 +1,81 @@
 package com.ka.identity_service.configuration;
 
-import com.ka.identity_service.dto.request.IntrospectRequest;
-import com.ka.identity_service.service.AuthenticationService;
-import com.nimbusds.jose.JOSEException;
+import com.ka.identity_service.service.PermissionRegistry;
+import com.ka.identity_service.service.ProfileClaims;
+import com.ka.identity_service.service.TokenValidation;
+import com.ka.identity_service.service.TokenValidator;
+import com.ka.identity_service.service.TokenVerdict;
+import com.ka.identity_service.service.VerifiedToken;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Bean;
-import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.BadJwtException;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtException;
-import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.spec.SecretKeySpec;
-import java.text.ParseException;
-import java.util.Objects;
+import java.time.Instant;
 // Custom JwtDecoder
 // Class này dùng để override cách Spring Security decode JWT
 // Mục đích chính:
-// - Gọi introspect để kiểm tra token có bị logout (blacklist) hay không
-// - Sau đó mới decode JWT như bình thường
+// - Verify token (chữ ký, hạn) và kiểm tra token có bị logout (blacklist) hay không
+// - Dựng đối tượng Jwt từ chính các claim vừa verify, không parse token lần thứ hai bằng NimbusJwtDecoder
 @Component
 public class CustomJwtDecoder implements JwtDecoder {
 
-    // Secret key dùng để verify chữ ký JWT
-    // Lấy từ application.properties / application.yml
-    @Value("${jwt.signerKey}")
-    private String signerKey;
-
-    // Service dùng để introspect token
-    // Thường dùng để:
-    // - Verify token
-    // - Kiểm tra token có nằm trong blacklist hay không
+    // Dùng để verify token, trả về verdict thay vì throw exception
+    // - Verify chữ ký HS512 + hạn (FastTokenVerifier, tự chuyển sang Nimbus với token lạ)
+    // - Kiểm tra token epoch của user và blacklist (jti)
     @Autowired
-    private AuthenticationService authenticationService;
-
-    // NimbusJwtDecoder dùng để decode JWT
-    // Khởi tạo lazy (chỉ tạo khi cần)
-    private NimbusJwtDecoder nimbusJwtDecoder = null;
+    private TokenValidator tokenValidator;
 
     // Override method decode của JwtDecoder
     @Override
     public Jwt decode(String token) throws JwtException {
-        try {
-            // Gọi introspect để kiểm tra token
-            // Nếu token:
-            // - Không hợp lệ
-            // - Hết hạn
-            // - Đã bị logout
-            // → method này sẽ throw exception
-            var response = authenticationService.introspect(
-                    IntrospectRequest.builder()
-                            .token(token)
-                            .build()
-            );
-            if(!response.isValid()){
-                throw new JwtException("Token invalid");
-            }
-        }
-        catch (JOSEException | ParseException e) {
-            // Nếu có lỗi trong quá trình introspect
-            // Chuyển exception sang JwtException để Spring Security hiểu
-            throw new JwtException(e.getMessage());
-        }
+        // Nếu token:
+        // - Không hợp lệ
+        // - Hết hạn
+        // - Đã bị logout
+        // → verdict khác VALID
+        TokenValidation validation = tokenValidator.validate(token);
+        if (!validation.isValid())
+            // JwtDecoder bắt buộc báo lỗi bằng exception để Spring Security trả về 401
+            // Exception không chụp stack trace (không cần cho lỗi token)
+            throw new InvalidTokenException(validation.verdict());
+        VerifiedToken claims = validation.claims();
 
-        // Khởi tạo NimbusJwtDecoder nếu chưa có
-        // Tránh tạo lại decoder nhiều lần
-        if (Objects.isNull(nimbusJwtDecoder)) {
+        // Trả về đối tượng Jwt cho Spring Security sử dụng
+        // (JwtAuthoritiesConverter đọc scope / perms, ProfileClaims đọc profile)
+        Jwt.Builder builder = Jwt.withTokenValue(token)
+                .header("alg", "HS512")
+                .subject(claims.subject())
+                .issuedAt(toInstant(claims.issueTime()))
+                .expiresAt(toInstant(claims.expirationTime()));
+        if (claims.issuer() != null)
+            builder.claim(JwtClaimNames.ISS, claims.issuer());
+        if (claims.jwtId() != null)
+            builder.jti(claims.jwtId());
+        if (claims.scope() != null)
+            builder.claim("scope", claims.scope());
+        if (claims.perms() != null)
+            builder.claim(PermissionRegistry.PERMS_CLAIM, claims.perms());
+        if (claims.profile() != null)
+            builder.claim(ProfileClaims.PROFILE_CLAIM, claims.profile());
+        return builder.build();
+    }
 
-            // Tạo secret key từ signerKey
-            // Thuật toán HMAC HS512
-            SecretKeySpec secretKeySpec =
-                    new SecretKeySpec(signerKey.getBytes(), "HS512");
+    private static Instant toInstant(Long epochSecond) {
+        return epochSecond == null ? null : Instant.ofEpochSecond(epochSecond);
+    }
 
-            // Tạo NimbusJwtDecoder với secret key và thuật toán HS512
-            nimbusJwtDecoder = NimbusJwtDecoder
-                    .withSecretKey(secretKeySpec)
-                    .macAlgorithm(MacAlgorithm.HS512)
-                    .build();
+    static class InvalidTokenException extends BadJwtException {
+        InvalidTokenException(TokenVerdict verdict) {
+            super("Token invalid: " + verdict);
         }
 
-        // Log decoder (chỉ dùng cho debug, không nên dùng trong production)
-        System.out.println(nimbusJwtDecoder);
-
-        // Decode JWT:
-        // - Verify chữ ký
-        // - Parse payload
-        // - Trả về đối tượng Jwt cho Spring Security sử dụng
-        return nimbusJwtDecoder.decode(token);
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
     }
 }
@@ -0,0 +1,96 @@
+package com.ka.identity_service.configuration;
+
+import io.grpc.BindableService;
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// gRPC server chạy song song với Tomcat, phục vụ mọi BindableService trong context (TokenIntrospectionService)
+// - Mặc định tắt, bật bằng app.grpc.enabled=true
+// - Service không có xác thực (ai gọi được cũng introspect được token) nên mặc định chỉ nghe trên 127.0.0.1
+// - Mở ra mạng ngoài (app.grpc.address) thì nên bật TLS: app.grpc.tls.cert-chain + app.grpc.tls.private-key (PEM)
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "app.grpc", name = "enabled", havingValue = "true")
+public class GrpcServerConfig {
+
+    @Bean
+    public GrpcServerLifecycle grpcServerLifecycle(
+            List<BindableService> services,
+            @Value("${app.grpc.address:127.0.0.1}") String address,
+            @Value("${app.grpc.port:9090}") int port,
+            @Value("${app.grpc.shutdown-grace-period:10s}") Duration shutdownGracePeriod,
+            @Value("${app.grpc.tls.cert-chain:}") String certChain,
+            @Value("${app.grpc.tls.private-key:}") String privateKey) {
+        InetSocketAddress socketAddress = new InetSocketAddress(address, port);
+        NettyServerBuilder builder = NettyServerBuilder.forAddress(socketAddress);
+        if (!certChain.isEmpty() && !privateKey.isEmpty())
+            builder.useTransportSecurity(new File(certChain), new File(privateKey));
+        else if (socketAddress.getAddress() == null || !socketAddress.getAddress().isLoopbackAddress())
+            log.warn("gRPC server listens on {} without TLS; set app.grpc.tls.cert-chain and app.grpc.tls.private-key",
+                    address);
+        services.forEach(builder::addService);
+        return new GrpcServerLifecycle(builder.build(), shutdownGracePeriod);
+    }
+
+    // Start sau khi context đã sẵn sàng, stop cùng lúc với graceful shutdown của Tomcat:
+    // không nhận call mới, chờ call đang chạy tối đa shutdown-grace-period
+    public static class GrpcServerLifecycle implements SmartLifecycle {
+
+        private final Server server;
+        private final Duration shutdownGracePeriod;
+        private volatile boolean running;
+
+        GrpcServerLifecycle(Server server, Duration shutdownGracePeriod) {
+            this.server = server;
+            this.shutdownGracePeriod = shutdownGracePeriod;
+        }
+
+        @Override
+        public void start() {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start gRPC server", e);
+            }
+            running = true;
+            log.info("gRPC server started on port {}", server.getPort());
+        }
+
+        @Override
+        public void stop() {
+            server.shutdown();
+            try {
+                if (!server.awaitTermination(shutdownGracePeriod.toMillis(), TimeUnit.MILLISECONDS))
+                    server.shutdownNow();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                server.shutdownNow();
+            }
+            running = false;
+            log.info("gRPC server stopped");
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+
+        public int getPort() {
+            return server.getPort();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ka.identity_service.configuration;
+
+import com.nimbusds.jose.shaded.gson.internal.LinkedTreeMap;
+import jakarta.persistence.Entity;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.core.type.filter.RegexPatternTypeFilter;
+import org.springframework.core.type.filter.TypeFilter;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/*
+ * Runtime hints cho native image (Spring AOT, profile Maven fast-start / native)
+ * - DTO request / response: Jackson đọc ghi qua reflection (getter, setter, constructor, builder của Lombok)
+ * - Entity và projection record: Hibernate tạo bằng reflection, JPQL "select new" gọi constructor
+ * - Class *Impl do MapStruct sinh ra
+ * - Nimbus: claim JSON được parse qua Gson (shaded) thành LinkedTreeMap
+ * Class được quét lúc build (AOT) nên không cần sửa file này khi thêm DTO / entity mới
+ */
+public class IdentityRuntimeHints implements RuntimeHintsRegistrar {
+
+    static String BASE_PACKAGE = "com.ka.identity_service";
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+        // DTO + builder do Lombok sinh ra (class lồng XxxBuilder)
+        for (Class<?> dto : scan(classLoader, BASE_PACKAGE + ".dto", anyClass())) {
+            bindingRegistrar.registerReflectionHints(hints.reflection(), dto);
+            for (Class<?> nested : dto.getDeclaredClasses()) {
+                if (nested.getSimpleName().endsWith("Builder"))
+                    hints.reflection().registerType(nested, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                            MemberCategory.INVOKE_PUBLIC_METHODS);
+            }
+        }
+
+        for (Class<?> entity : scan(classLoader, BASE_PACKAGE + ".entity", new AnnotationTypeFilter(Entity.class))) {
+            hints.reflection().registerType(entity, MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
+        }
+
+        for (Class<?> projection : scan(classLoader, BASE_PACKAGE + ".repository.projection", anyClass())) {
+            hints.reflection().registerType(projection, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        for (Class<?> mapper : scan(classLoader, BASE_PACKAGE + ".mapper",
+                new RegexPatternTypeFilter(Pattern.compile(".*MapperImpl")))) {
+            hints.reflection().registerType(mapper, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        hints.reflection().registerType(LinkedTreeMap.class,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        // Migration Flyway nằm trong classpath
+        hints.resources().registerPattern("db/migration/*.sql");
+    }
+
+    private static List<Class<?>> scan(ClassLoader classLoader, String basePackage, TypeFilter filter) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            // Cho phép cả record / class không phải "component" độc lập
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                return beanDefinition.getMetadata().isIndependent();
+            }
+        };
+        scanner.setResourceLoader(new DefaultResourceLoader(classLoader));
+        scanner.addIncludeFilter(filter);
+        return scanner.findCandidateComponents(basePackage).stream()
+                .map(BeanDefinition::getBeanClassName)
+                .<Class<?>>map(name -> ClassUtils.resolveClassName(name, classLoader))
+                .toList();
+    }
+
+    private static TypeFilter anyClass() {
+        return (metadataReader, metadataReaderFactory) -> true;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ka.identity_service.configuration;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// UserResponse có @JsonFilter: response không đặt filter (createUser, myInfo, ...) hoặc ObjectMapper
+// inject ở nơi khác (WarmUpService) phải serialize đủ field thay vì lỗi "no FilterProvider configured"
+// Áp dụng cho mọi mapper tạo từ Jackson2ObjectMapperBuilder, kể cả CBOR / Smile (BinaryContentConfig)
+@Configuration
+public class JacksonConfig {
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer defaultFilterProvider() {
+        return builder -> builder.filters(new SimpleFilterProvider().setFailOnUnknownId(false));
+    }
+}
@@ -0,0 +1,131 @@
+package com.ka.identity_service.configuration;
+
+import com.ka.identity_service.service.PermissionRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Converter lấy authority từ JWT
+// - Claim "scope": chuỗi ROLE_xxx / permission cách nhau bởi dấu space (không thêm prefix)
+// - Claim "perms": bitset base64url, decode qua PermissionRegistry (có cache)
+//
+// Số chuỗi scope khác nhau trong thực tế rất ít (vài trăm) nên kết quả được memoize:
+// - Mỗi scope chỉ split + tạo authority một lần, các request sau dùng lại list bất biến
+// - GrantedAuthority được intern, các list dùng chung cùng một object
+// - Cache có giới hạn kích thước (jwt.authority-cache-size), vượt thì xóa và tạo lại
+// - Kèm theo bitset (AuthorityIndex) để kiểm tra quyền bằng phép AND bit
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class JwtAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
+
+    PermissionRegistry permissionRegistry;
+    AuthorityIndex authorityIndex;
+    int maxSize;
+
+    // Key là chuỗi scope (token không có claim perms) → không phải cấp phát key mới
+    Map<String, AuthoritySet> byScope = new ConcurrentHashMap<>();
+    // Token có claim perms
+    Map<ClaimsKey, AuthoritySet> byClaims = new ConcurrentHashMap<>();
+    Map<String, GrantedAuthority> interned = new ConcurrentHashMap<>();
+
+    // generation của PermissionRegistry lúc cache được tạo
+    @NonFinal
+    volatile int registryGeneration;
+
+    record ClaimsKey(String scope, String perms) {
+    }
+
+    // Danh sách authority bất biến + bitset tương ứng
+    public record AuthoritySet(List<GrantedAuthority> authorities, long[] bits) {
+    }
+
+    static AuthoritySet EMPTY = new AuthoritySet(List.of(), new long[0]);
+
+    public JwtAuthoritiesConverter(PermissionRegistry permissionRegistry,
+                                   AuthorityIndex authorityIndex,
+                                   @Value("${jwt.authority-cache-size:1024}") int maxSize) {
+        this.permissionRegistry = permissionRegistry;
+        this.authorityIndex = authorityIndex;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> convert(Jwt jwt) {
+        return convertToSet(jwt).authorities();
+    }
+
+    public AuthoritySet convertToSet(Jwt jwt) {
+        String scope = jwt.getClaims().get("scope") instanceof String value ? value : null;
+        String perms = jwt.getClaims().get(PermissionRegistry.PERMS_CLAIM) instanceof String value ? value : null;
+
+        if (perms == null) {
+            if (scope == null)
+                return EMPTY;
+            AuthoritySet cached = byScope.get(scope);
+            if (cached != null)
+                return cached;
+            return cache(byScope, scope, build(scope, null));
+        }
+
+        // Ánh xạ bitIndex → permission thay đổi thì kết quả decode cũ không còn đúng
+        int generation = permissionRegistry.generation();
+        if (generation != registryGeneration) {
+            byClaims.clear();
+            registryGeneration = generation;
+        }
+        ClaimsKey key = new ClaimsKey(scope, perms);
+        AuthoritySet cached = byClaims.get(key);
+        if (cached != null)
+            return cached;
+        AuthoritySet authorities = build(scope, perms);
+        // Registry vừa reload trong lúc decode → không cache kết quả có thể đã cũ
+        if (permissionRegistry.generation() != generation)
+            return authorities;
+        return cache(byClaims, key, authorities);
+    }
+
+    // Số authority set đang được cache
+    public int size() {
+        return byScope.size() + byClaims.size();
+    }
+
+    private <K> AuthoritySet cache(Map<K, AuthoritySet> cache, K key, AuthoritySet authorities) {
+        if (cache.size() >= maxSize)
+            cache.clear();
+        cache.put(key, authorities);
+        return authorities;
+    }
+
+    private AuthoritySet build(String scope, String perms) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        if (scope != null) {
+            for (String authority : scope.split(" ")) {
+                if (!authority.isEmpty())
+                    authorities.add(intern(authority));
+            }
+        }
+        if (perms != null) {
+            permissionRegistry.decode(perms)
+                    .forEach(name -> authorities.add(intern(name)));
+        }
+        return new AuthoritySet(List.copyOf(authorities), authorityIndex.toBits(authorities));
+    }
+
+    private GrantedAuthority intern(String authority) {
+        if (interned.size() >= maxSize)
+            interned.clear();
+        return interned.computeIfAbsent(authority, SimpleGrantedAuthority::new);
+    }
+}
@@ -0,0 +1,85 @@
+package com.ka.identity_service.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.time.Duration;
+
+// Chỉ bật khi có cấu hình app.datasource.replica.url, không có thì dùng DataSource mặc định của Spring Boot
+// Lưu ý: open-in-view phải tắt, nếu không connection được lấy từ đầu request (trước khi có transaction readOnly)
+@Configuration
+@ConditionalOnProperty(prefix = "app.datasource.replica", name = "url")
+public class ReadReplicaConfig {
+
+    // Primary vẫn lấy từ spring.datasource.*, pool cấu hình qua spring.datasource.hikari.*
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+    }
+
+    @Bean
+    @ConfigurationProperties("app.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(
+            @Value("${app.datasource.replica.url}") String url,
+            @Value("${app.datasource.replica.username:${spring.datasource.username:}}") String username,
+            @Value("${app.datasource.replica.password:${spring.datasource.password:}}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            HikariDataSource replicaDataSource,
+            @Value("${app.datasource.replica.sticky-window:5s}") Duration stickyWindow,
+            @Value("${app.datasource.replica.health-check-timeout:1}") int healthCheckTimeout) {
+        return new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, stickyWindow, healthCheckTimeout);
+    }
+
+    // DataSource mà JPA / transaction manager sử dụng
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    // Xóa trạng thái "request này đã ghi" khi request kết thúc
+    @Bean
+    public OncePerRequestFilter replicaRoutingFilter() {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                            FilterChain filterChain) throws ServletException, IOException {
+                try {
+                    filterChain.doFilter(request, response);
+                } finally {
+                    ReplicaRoutingDataSource.clearRequest();
+                }
+            }
+        };
+    }
+}
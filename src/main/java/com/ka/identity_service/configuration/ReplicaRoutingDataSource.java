@@ -0,0 +1,153 @@
+package com.ka.identity_service.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * DataSource chọn primary hoặc replica cho từng connection
+ * - Transaction readOnly (@Transactional(readOnly = true)) → replica
+ * - Còn lại (ghi, không có transaction) → primary
+ * - Read-your-writes: sau khi request / user vừa ghi thì các lần đọc tiếp theo
+ *   vẫn đi primary (trong cùng request, hoặc trong sticky-window với cùng user)
+ * - Replica lỗi khi lấy connection hoặc không qua health check → tạm dùng primary
+ *
+ * Phải bọc bởi LazyConnectionDataSourceProxy: connection thật chỉ được lấy ở câu lệnh đầu tiên,
+ * lúc đó transaction manager đã đánh dấu readOnly xong
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    enum Route {
+        PRIMARY, REPLICA
+    }
+
+    // Thread hiện tại đã ghi vào primary
+    // - Trong HTTP request: giữ đến hết request, được xóa bởi filter trong ReadReplicaConfig
+    // - Ngoài request (@Scheduled, thread của gRPC): chỉ giữ đến hết transaction ghi
+    private static final ThreadLocal<Boolean> REQUEST_WROTE = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long stickyWindowNanos;
+    private final int healthCheckTimeout;
+
+    // username → thời điểm ghi gần nhất (System.nanoTime)
+    private final Map<String, Long> lastWriteByUser = new ConcurrentHashMap<>();
+
+    private volatile boolean replicaHealthy = true;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration stickyWindow,
+                                    int healthCheckTimeout) {
+        this.primary = primary;
+        this.replica = replica;
+        this.stickyWindowNanos = stickyWindow.toNanos();
+        this.healthCheckTimeout = healthCheckTimeout;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (route() == Route.REPLICA) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                log.warn("Replica connection failed, falling back to primary", e);
+                replicaHealthy = false;
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (route() == Route.REPLICA) {
+            try {
+                return replica.getConnection(username, password);
+            } catch (SQLException e) {
+                log.warn("Replica connection failed, falling back to primary", e);
+                replicaHealthy = false;
+            }
+        }
+        return primary.getConnection(username, password);
+    }
+
+    Route route() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive())
+                markWrite();
+            return Route.PRIMARY;
+        }
+        return replicaHealthy && !isSticky() ? Route.REPLICA : Route.PRIMARY;
+    }
+
+    // Kiểm tra replica định kỳ, đồng thời dọn các entry sticky đã hết hạn
+    @Scheduled(fixedDelayString = "${app.datasource.replica.health-check-interval-ms:5000}")
+    public void checkReplicaHealth() {
+        boolean healthy;
+        try (Connection connection = replica.getConnection()) {
+            healthy = connection.isValid(healthCheckTimeout);
+        } catch (SQLException e) {
+            healthy = false;
+        }
+        if (healthy != replicaHealthy)
+            log.warn("Replica is now {}", healthy ? "healthy, routing read-only transactions to it" : "unhealthy, reads go to primary");
+        replicaHealthy = healthy;
+
+        long now = System.nanoTime();
+        lastWriteByUser.values().removeIf(writtenAt -> now - writtenAt >= stickyWindowNanos);
+    }
+
+    public boolean isReplicaHealthy() {
+        return replicaHealthy;
+    }
+
+    public static void clearRequest() {
+        REQUEST_WROTE.remove();
+    }
+
+    private void markWrite() {
+        if (RequestContextHolder.getRequestAttributes() != null) {
+            REQUEST_WROTE.set(Boolean.TRUE);
+        } else if (REQUEST_WROTE.get() == null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Không có filter nào xóa cờ cho thread này: xóa khi transaction kết thúc,
+            // nếu không thread sẽ đi primary cho mọi lần đọc về sau
+            REQUEST_WROTE.set(Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    REQUEST_WROTE.remove();
+                }
+            });
+        }
+        String username = currentUsername();
+        if (username != null)
+            lastWriteByUser.put(username, System.nanoTime());
+    }
+
+    private boolean isSticky() {
+        if (REQUEST_WROTE.get() != null)
+            return true;
+        String username = currentUsername();
+        if (username == null)
+            return false;
+        Long writtenAt = lastWriteByUser.get(username);
+        return writtenAt != null && System.nanoTime() - writtenAt < stickyWindowNanos;
+    }
+
+    private static String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated() ? authentication.getName() : null;
+    }
+}
@@ -2,19 +2,22 @@
 package com.ka.identity_service.configuration;
 
 // Import các annotation và class cần thiết cho cấu hình bảo mật
+import org.springframework.aop.Advisor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authorization.method.AuthorizationManagerAfterMethodInterceptor;
+import org.springframework.security.authorization.method.AuthorizationManagerBeforeMethodInterceptor;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
-import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.security.web.SecurityFilterChain;
 
 import javax.crypto.spec.SecretKeySpec;
@@ -26,7 +29,8 @@ import javax.crypto.spec.SecretKeySpec;
 @EnableWebSecurity
 
 // Bật bảo mật ở tầng method (cho phép dùng @PreAuthorize, @PostAuthorize, ...)
-@EnableMethodSecurity
+// Advisor cho @PreAuthorize / @PostAuthorize được khai báo bên dưới
+@EnableMethodSecurity(prePostEnabled = false)
 public class WebSecurityConfig {
 
     // Danh sách các endpoint public (không cần đăng nhập)
@@ -35,6 +39,7 @@ public class WebSecurityConfig {
             "/users",
             "/auth/token",
             "/auth/introspect",
+            "/auth/introspect/batch",
             "/auth/logout",
             "/auth/refresh"
     };
@@ -45,6 +50,9 @@ public class WebSecurityConfig {
     @Autowired
     private CustomJwtDecoder customJwtDecoder;
 
+    @Autowired
+    private JwtAuthoritiesConverter jwtAuthoritiesConverter;
+
     // Bean cấu hình chuỗi filter bảo mật của Spring Security
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity httpSecurity) throws Exception {
@@ -97,28 +105,30 @@ public class WebSecurityConfig {
      * Nhiệm vụ chính:
      * - Lấy scope / authority từ JWT
      * - Convert thành GrantedAuthority cho Spring Security
+     * - Kèm bitset authority để @PreAuthorize kiểm tra bằng phép AND bit
      */
     @Bean
-    JwtAuthenticationConverter jwtAuthenticationConverter(){
-
-        // Converter dùng để lấy authority từ claim trong JWT
-        JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter =
-                new JwtGrantedAuthoritiesConverter();
+    BitsetJwtAuthenticationConverter jwtAuthenticationConverter(){
 
-        // Mặc định Spring sẽ tự thêm prefix "ROLE_"
-        // Ở đây set prefix = "" vì trong JWT đã có ROLE_ sẵn
-        // Ví dụ: ROLE_ADMIN, USER_CREATE
-        jwtGrantedAuthoritiesConverter.setAuthorityPrefix("");
-
-        // Converter chính để tạo Authentication từ JWT
-        JwtAuthenticationConverter jwtAuthenticationConverter =
-                new JwtAuthenticationConverter();
+        // JwtAuthoritiesConverter đọc cả claim "scope" (không thêm prefix vì đã có ROLE_ sẵn)
+        // và claim "perms" dạng bitset
+        return new BitsetJwtAuthenticationConverter(jwtAuthoritiesConverter);
+    }
 
-        // Gán converter authority vào JWT Authentication Converter
-        jwtAuthenticationConverter
-                .setJwtGrantedAuthoritiesConverter(jwtGrantedAuthoritiesConverter);
+    /*
+     * @PreAuthorize dùng BitsetAuthorizationManager thay cho SpEL với các biểu thức đơn giản
+     * (prePostEnabled = false nên phải tự khai báo cả advisor cho @PostAuthorize)
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor preAuthorizeAdvisor(AuthorityIndex authorityIndex) {
+        return AuthorizationManagerBeforeMethodInterceptor.preAuthorize(new BitsetAuthorizationManager(authorityIndex));
+    }
 
-        return jwtAuthenticationConverter;
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor postAuthorizeAdvisor() {
+        return AuthorizationManagerAfterMethodInterceptor.postAuthorize();
     }
 
     /*
@@ -4,16 +4,18 @@ import com.ka.identity_service.dto.request.*;
 import com.ka.identity_service.dto.response.AuthenticationResponse;
 import com.ka.identity_service.dto.response.IntrospectResponse;
 import com.ka.identity_service.service.AuthenticationService;
-import com.nimbusds.jose.JOSEException;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/auth")
@@ -31,24 +33,46 @@ public class AuthenticationController {
                 .build();
     }
     @PostMapping("/introspect")
-    ApiResponse<IntrospectResponse> authenticate(@RequestBody IntrospectRequest request)
-            throws ParseException, JOSEException {
+    ResponseEntity<ApiResponse<IntrospectResponse>> authenticate(@RequestBody IntrospectRequest request) {
         var result = authenticationService.introspect(request);
-        return ApiResponse.<IntrospectResponse>builder()
-                .result(result)
-                .build();
+        // Cache-Control: max-age để gateway cache kết quả introspect đúng thời hạn
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(authenticationService.introspectCacheMaxAge(result), TimeUnit.SECONDS))
+                .body(ApiResponse.<IntrospectResponse>builder()
+                        .result(result)
+                        .build());
+    }
+
+    @PostMapping("/introspect/batch")
+    ResponseEntity<ApiResponse<List<IntrospectResponse>>> introspectBatch(@RequestBody IntrospectBatchRequest request) {
+        var result = authenticationService.introspectBatch(request);
+        // Cả batch được cache theo token có thời hạn ngắn nhất
+        long maxAge = result.stream()
+                .mapToLong(authenticationService::introspectCacheMaxAge)
+                .min()
+                .orElse(0);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAge, TimeUnit.SECONDS))
+                .body(ApiResponse.<List<IntrospectResponse>>builder()
+                        .result(result)
+                        .build());
     }
 
     @PostMapping("/logout")
-    ApiResponse<Void> logout(@RequestBody LogoutRequest request)
-            throws ParseException, JOSEException {
+    ApiResponse<Void> logout(@RequestBody LogoutRequest request) {
         authenticationService.logout(request);
         return ApiResponse.<Void>builder().build();
     }
 
+    // Cần access token hợp lệ, không nằm trong PUBLIC_ENDPOINTS
+    @PostMapping("/logout-all")
+    ApiResponse<Void> logoutAll() {
+        authenticationService.logoutAll();
+        return ApiResponse.<Void>builder().build();
+    }
+
     @PostMapping("/refresh")
-    ApiResponse<AuthenticationResponse> authenticate(@RequestBody RefreshRequest request)
-            throws ParseException, JOSEException {
+    ApiResponse<AuthenticationResponse> authenticate(@RequestBody RefreshRequest request) {
         var result = authenticationService.refreshToken(request);
         return ApiResponse.<AuthenticationResponse>builder()
                 .result(result)
@@ -9,6 +9,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -26,8 +27,11 @@ public class PermissionController {
                 .build();
     }
 
+    // Danh sách permission chưa đổi so với ETag client gửi lên (If-None-Match) → 304, không đọc bảng permission
     @GetMapping
-    ApiResponse<List<PermissionResponse>> getAll(){
+    ApiResponse<List<PermissionResponse>> getAll(WebRequest webRequest){
+        if (webRequest.checkNotModified(permissionService.getAllEtag()))
+            return null;
         return ApiResponse.<List<PermissionResponse>>builder()
                 .result(permissionService.getAll())
                 .build();
@@ -11,6 +11,7 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -28,8 +29,11 @@ public class RoleController {
                 .build();
     }
 
+    // Danh sách role chưa đổi so với ETag client gửi lên (If-None-Match) → 304, không đọc bảng role
     @GetMapping
-    ApiResponse<List<RoleResponse>> getAll(){
+    ApiResponse<List<RoleResponse>> getAll(WebRequest webRequest){
+        if (webRequest.checkNotModified(roleService.getAllEtag()))
+            return null;
         return ApiResponse.<List<RoleResponse>>builder()
                 .result(roleService.getAll())
                 .build();
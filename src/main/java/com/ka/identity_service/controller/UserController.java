@@ -1,7 +1,10 @@
 package com.ka.identity_service.controller;
 
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.ka.identity_service.dto.request.ApiResponse;
 import com.ka.identity_service.dto.request.UserCreationRequest;
+import com.ka.identity_service.dto.request.UserField;
 import com.ka.identity_service.dto.request.UserUpdateRequest;
 import com.ka.identity_service.dto.response.UserResponse;
 import com.ka.identity_service.entity.User;
@@ -13,10 +16,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/users")
@@ -37,23 +43,35 @@ public class UserController {
     }
     
 
+    // fields (tùy chọn): danh sách field cần trả về, ví dụ ?fields=id,username
+    // Không có fields → trả đủ UserResponse như trước
+    // Response có ETag, request gửi lại If-None-Match trùng ETag → 304 trước khi đọc bảng user
     @GetMapping
-    ApiResponse<List<UserResponse>> getUsers(){
+    MappingJacksonValue getUsers(@RequestParam(name = "fields", required = false) String fields, WebRequest webRequest){
         var authentication = SecurityContextHolder.getContext().getAuthentication();
         log.info("User name: {}", authentication.getName());
         authentication.getAuthorities().forEach(grantedAuthority -> log.info(grantedAuthority.getAuthority()));
-        return ApiResponse.<List<UserResponse>>builder()
-                .result(userService.getUsers())
-                .build();
+        Set<UserField> selected = UserField.parse(fields);
+        if (webRequest.checkNotModified(userService.getUsersEtag(selected)))
+            return null;
+        return withFields(ApiResponse.<List<UserResponse>>builder()
+                .result(userService.getUsers(selected))
+                .build(), selected);
 
     }
 
     @GetMapping("/{userId}")
-    ApiResponse<UserResponse> getUser(@PathVariable("userId") String userId){
+    MappingJacksonValue getUser(@PathVariable("userId") String userId,
+                                @RequestParam(name = "fields", required = false) String fields,
+                                WebRequest webRequest){
+        Set<UserField> selected = UserField.parse(fields);
+        String etag = userService.getUserEtag(userId, selected);
+        if (etag != null && webRequest.checkNotModified(etag))
+            return null;
         ApiResponse<UserResponse> apiResponse = new ApiResponse<>();
 
-        apiResponse.setResult(userService.getUser(userId));
-        return apiResponse;
+        apiResponse.setResult(userService.getUser(userId, selected));
+        return withFields(apiResponse, selected);
     }
 
     @GetMapping("/myInfo")
@@ -80,4 +98,14 @@ public class UserController {
         userService.deleteUser(userId);
         return "User has been deleted";
     }
+
+    // Chỉ serialize các field được chọn của UserResponse (@JsonFilter trên UserResponse)
+    // Converter JSON / CBOR / Smile đều áp dụng filter của MappingJacksonValue
+    private static MappingJacksonValue withFields(Object body, Set<UserField> fields){
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        if (!fields.containsAll(UserField.ALL))
+            value.setFilters(new SimpleFilterProvider().addFilter(UserField.FILTER_ID,
+                    SimpleBeanPropertyFilter.filterOutAllExcept(UserField.properties(fields))));
+        return value;
+    }
 }
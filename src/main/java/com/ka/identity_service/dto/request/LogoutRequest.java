@@ -10,4 +10,7 @@ import lombok.experimental.FieldDefaults;
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class LogoutRequest {
     String token;
+
+    // Không bắt buộc: refresh token của phiên cần thu hồi
+    String refreshToken;
 }
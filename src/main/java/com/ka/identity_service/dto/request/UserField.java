@@ -0,0 +1,83 @@
+package com.ka.identity_service.dto.request;
+
+import com.ka.identity_service.exception.AppException;
+import com.ka.identity_service.exception.ErrorCode;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Các field của UserResponse có thể chọn qua tham số fields của GET /users, GET /users/{id}
+// Ví dụ: ?fields=id,username → chỉ select 2 cột id, username và JSON chỉ có 2 field đó
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public enum UserField {
+    ID("id", "id"),
+    USERNAME("username", "username"),
+    FIRST_NAME("firstName", "firstName"),
+    // Giữ nguyên mapping của UserMapper: lastName lấy từ cột firstName
+    LAST_NAME("lastName", "firstName"),
+    DOB("dob", "dob"),
+    // Không nằm trên bảng user, đọc bằng query user_roles / role_permissions riêng
+    ROLES("roles", null),
+    ;
+
+    // Id của @JsonFilter trên UserResponse
+    public static final String FILTER_ID = "userFields";
+
+    public static final Set<UserField> ALL = Collections.unmodifiableSet(EnumSet.allOf(UserField.class));
+
+    // Tên field trong JSON, cũng là tên dùng trong tham số fields
+    String property;
+    // Thuộc tính của entity User cần select
+    String attribute;
+
+    UserField(String property, String attribute) {
+        this.property = property;
+        this.attribute = attribute;
+    }
+
+    // null / rỗng → mọi field, tên không tồn tại → INVALID_FIELDS
+    public static Set<UserField> parse(String fields) {
+        if (fields == null || fields.isBlank())
+            return ALL;
+        Set<UserField> selected = EnumSet.noneOf(UserField.class);
+        for (String name : fields.split(",")) {
+            if (name.isBlank())
+                continue;
+            selected.add(fromProperty(name.trim()));
+        }
+        return selected.isEmpty() ? ALL : selected;
+    }
+
+    public static Set<String> properties(Set<UserField> fields) {
+        Set<String> properties = new LinkedHashSet<>();
+        fields.forEach(field -> properties.add(field.property));
+        return properties;
+    }
+
+    // Thuộc tính entity cần select cho các field được chọn
+    // Chọn roles thì cần thêm id để ghép với user_roles
+    public static Set<String> attributes(Set<UserField> fields) {
+        Set<String> attributes = new LinkedHashSet<>();
+        for (UserField field : fields) {
+            if (field.attribute != null)
+                attributes.add(field.attribute);
+        }
+        if (fields.contains(ROLES))
+            attributes.add(ID.attribute);
+        return attributes;
+    }
+
+    private static UserField fromProperty(String property) {
+        for (UserField field : values()) {
+            if (field.property.equals(property))
+                return field;
+        }
+        throw new AppException(ErrorCode.INVALID_FIELDS);
+    }
+}
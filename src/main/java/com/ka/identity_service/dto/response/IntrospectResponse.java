@@ -1,5 +1,6 @@
 package com.ka.identity_service.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
@@ -7,6 +8,9 @@ import lombok.experimental.FieldDefaults;
  * IntrospectResponse:
  * Class DTO dùng để nhận kết quả trả về từ endpoint introspection
  * nhằm kiểm tra tính hợp lệ của token.
+ *
+ * Format theo RFC 7662: khi token không hợp lệ chỉ trả về active = false,
+ * các claim (sub, scope, exp, iat, jti) chỉ có khi active = true
  */
 
 @Data
@@ -24,6 +28,9 @@ import lombok.experimental.FieldDefaults;
 @FieldDefaults(level = AccessLevel.PRIVATE)
 // Tự động đặt modifier 'private' cho tất cả field
 
+@JsonInclude(JsonInclude.Include.NON_NULL)
+// Bỏ qua các claim null khi token không hợp lệ
+
 public class IntrospectResponse {
 
     /*
@@ -34,7 +41,25 @@ public class IntrospectResponse {
      * Vì dùng @Data và kiểu primitive boolean,
      * Lombok sẽ tự sinh getter:
      *    public boolean isValid()
+     *
+     * Giữ lại cho client cũ, giá trị luôn bằng active
      */
     boolean valid;
 
+    // Tên field theo RFC 7662
+    boolean active;
+
+    // Subject (username)
+    String sub;
+
+    // Chuỗi quyền, cách nhau bởi dấu space
+    String scope;
+
+    // Thời điểm hết hạn / phát hành, tính bằng giây (epoch seconds)
+    Long exp;
+    Long iat;
+
+    // JWT ID
+    String jti;
+
 }
@@ -1,5 +1,7 @@
 package com.ka.identity_service.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.ka.identity_service.dto.request.UserField;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
@@ -11,6 +13,8 @@ import java.util.Set;
 @AllArgsConstructor
 @Builder
 @FieldDefaults(level = AccessLevel.PRIVATE)
+// Lọc field theo tham số fields (UserController), không có filter thì serialize đủ (JacksonConfig)
+@JsonFilter(UserField.FILTER_ID)
 public class UserResponse {
     String id;
     String username;
@@ -0,0 +1,22 @@
+package com.ka.identity_service.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+// Bộ đếm version của một tập dữ liệu (users, roles, permissions)
+// Không dùng @Version: giá trị được tăng bằng câu update trực tiếp (CollectionVersionRepository.increment)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+public class CollectionVersion {
+    @Id
+    String name;
+
+    Long version;
+}
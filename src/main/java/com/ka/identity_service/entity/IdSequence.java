@@ -0,0 +1,22 @@
+package com.ka.identity_service.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+// Bộ đếm chỉ tăng (bảng id_sequence), ví dụ bitIndex của permission
+// nextValue: giá trị sẽ được cấp ở lần tiếp theo
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+public class IdSequence {
+    @Id
+    String name;
+
+    Long nextValue;
+}
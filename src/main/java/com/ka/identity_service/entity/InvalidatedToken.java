@@ -2,8 +2,12 @@ package com.ka.identity_service.entity;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Transient;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import org.springframework.data.domain.Persistable;
 
 import java.util.Date;
 
@@ -27,7 +31,7 @@ import java.util.Date;
 
 // Đánh dấu đây là một Entity, tương ứng với một bảng trong database
 @Entity
-public class InvalidatedToken
+public class InvalidatedToken implements Persistable<String>
 {
     // Khóa chính của bảng
     // Lưu ID của token (thường là jti trong JWT)
@@ -37,4 +41,21 @@ public class InvalidatedToken
     // Thời điểm token hết hạn
     // Dùng để dọn dẹp (cleanup) các token đã bị vô hiệu hóa
     Date expiryTime;
+
+    // id do ta tự gán nên Spring Data mặc định sẽ SELECT trước khi INSERT (merge)
+    // Đánh dấu là entity mới để saveAll() INSERT thẳng và được gom thành batch
+    @Transient
+    @Builder.Default
+    boolean isNew = true;
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
 }
@@ -1,7 +1,9 @@
 package com.ka.identity_service.entity;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Version;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
@@ -16,4 +18,13 @@ public class Permission {
     @Id
     String name;
     String description;
+
+    // ID số nhỏ, cố định cho mỗi permission
+    // Dùng làm vị trí bit trong claim "perms" (bitset) của JWT
+    @Column(unique = true)
+    Integer bitIndex;
+
+    // Tăng mỗi lần entity được update (optimistic locking)
+    @Version
+    Long version;
 }
@@ -0,0 +1,43 @@
+package com.ka.identity_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Date;
+
+// Refresh token dạng opaque (chuỗi ngẫu nhiên), tách biệt với access token (JWT)
+// - Chỉ lưu hash của token, không lưu token gốc
+// - Các token sinh ra từ cùng một lần đăng nhập thuộc cùng một family
+// - Mỗi lần refresh: token cũ bị đánh dấu used, token mới được cấp trong cùng family
+// - Token đã used bị dùng lại → nghi bị đánh cắp → revoke cả family
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+public class RefreshToken {
+    // SHA-256 (base64url) của refresh token
+    @Id
+    String id;
+
+    // ID của phiên đăng nhập (family)
+    @Column(nullable = false)
+    String familyId;
+
+    @Column(nullable = false)
+    String username;
+
+    // Hạn của cả family, được giữ nguyên qua các lần rotate
+    Date expiryTime;
+
+    // Đã được dùng để refresh (rotate) hay chưa
+    boolean used;
+
+    // Family đã bị thu hồi (logout hoặc phát hiện dùng lại token)
+    boolean revoked;
+}
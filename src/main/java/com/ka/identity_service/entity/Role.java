@@ -3,6 +3,7 @@ package com.ka.identity_service.entity;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.ManyToMany;
+import jakarta.persistence.Version;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
@@ -24,4 +25,8 @@ public class Role {
 
     @ManyToMany
     Set<Permission> permissions;
+
+    // Tăng mỗi lần entity được update (optimistic locking)
+    @Version
+    Long version;
 }
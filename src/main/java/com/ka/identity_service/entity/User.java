@@ -29,4 +29,16 @@ public class User {
     @ManyToMany
     Set<Role> roles;
 
+    // Token epoch: bộ đếm chỉ tăng, mỗi lần thu hồi thành max(giá trị cũ + 1, epoch seconds hiện tại)
+    // Token có claim tep (hoặc iat với token cũ chưa có tep) nhỏ hơn giá trị này bị coi là đã thu hồi
+    // Dùng cho "logout khỏi mọi thiết bị", đổi mật khẩu: chỉ cần update 1 cột
+    private Long tokensValidAfter;
+
+    // Tăng mỗi lần profile thay đổi, token mang profile cũ hơn thì không được dùng để trả myInfo
+    private Long profileVersion;
+
+    // Tăng mỗi lần entity được update (optimistic locking), dùng làm ETag của GET /users/{id}
+    @Version
+    private Long version;
+
 }
@@ -0,0 +1,14 @@
+package com.ka.identity_service.enums;
+
+import java.util.Locale;
+
+// Các tập dữ liệu có bộ đếm version riêng (bảng collection_version), key là cột name
+public enum VersionedCollection {
+    USERS,
+    ROLES,
+    PERMISSIONS;
+
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
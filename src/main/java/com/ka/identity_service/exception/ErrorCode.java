@@ -14,7 +14,9 @@ public enum ErrorCode {
     USER_NOT_EXISTED(1005, "User not existed", HttpStatus.NOT_FOUND),
     UNAUTHENTICATED(1006, "Unauthenticated", HttpStatus.UNAUTHORIZED),
     UNAUTHORIZED(1007, "You do not have permission", HttpStatus.FORBIDDEN),
-    INVALID_DOB(1008, "Your age must at least {min}", HttpStatus.BAD_REQUEST)
+    INVALID_DOB(1008, "Your age must at least {min}", HttpStatus.BAD_REQUEST),
+    INTROSPECT_BATCH_TOO_LARGE(1009, "Too many tokens in one introspect batch", HttpStatus.BAD_REQUEST),
+    INVALID_FIELDS(1010, "Unknown field in fields parameter", HttpStatus.BAD_REQUEST)
     ;
 
     ErrorCode(int code, String message, HttpStatusCode statusCode){
@@ -0,0 +1,145 @@
+package com.ka.identity_service.grpc;
+
+import com.ka.identity_service.dto.request.IntrospectBatchRequest;
+import com.ka.identity_service.dto.request.IntrospectRequest;
+import com.ka.identity_service.dto.response.IntrospectResponse;
+import com.ka.identity_service.exception.AppException;
+import com.ka.identity_service.grpc.proto.TokenBatch;
+import com.ka.identity_service.grpc.proto.TokenIntrospectionGrpc;
+import com.ka.identity_service.grpc.proto.TokenRequest;
+import com.ka.identity_service.grpc.proto.TokenStatus;
+import com.ka.identity_service.grpc.proto.TokenStatusBatch;
+import com.ka.identity_service.service.AuthenticationService;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/*
+ * gRPC TokenIntrospection (src/main/proto/token_introspection.proto)
+ * - Dùng chung AuthenticationService.introspect / introspectBatch với REST,
+ *   kết quả và cache_max_age giống hệt /auth/introspect
+ * - IntrospectStream: sidecar giữ một stream lâu dài, mỗi batch gửi lên nhận về một batch kết quả,
+ *   không tốn chi phí mở request HTTP + serialize JSON cho mỗi lần kiểm tra
+ * - AppException → status tương ứng (ví dụ batch quá lớn → INVALID_ARGUMENT), lỗi khác → INTERNAL
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TokenIntrospectionService extends TokenIntrospectionGrpc.TokenIntrospectionImplBase {
+
+    AuthenticationService authenticationService;
+
+    @Override
+    public void introspect(TokenRequest request, StreamObserver<TokenStatus> responseObserver) {
+        try {
+            IntrospectResponse response = authenticationService.introspect(IntrospectRequest.builder()
+                    .token(request.getToken())
+                    .build());
+            responseObserver.onNext(toTokenStatus(response));
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            responseObserver.onError(toStatus(e));
+        }
+    }
+
+    @Override
+    public void introspectBatch(TokenBatch request, StreamObserver<TokenStatusBatch> responseObserver) {
+        try {
+            responseObserver.onNext(introspect(request));
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            responseObserver.onError(toStatus(e));
+        }
+    }
+
+    @Override
+    public StreamObserver<TokenBatch> introspectStream(StreamObserver<TokenStatusBatch> responseObserver) {
+        // gRPC gọi onNext / onCompleted của một stream lần lượt, không đồng thời
+        // nên kết quả được trả về đúng thứ tự các batch gửi lên
+        return new StreamObserver<>() {
+            boolean closed;
+
+            @Override
+            public void onNext(TokenBatch batch) {
+                if (closed)
+                    return;
+                try {
+                    responseObserver.onNext(introspect(batch));
+                } catch (Exception e) {
+                    // Batch lỗi kết thúc cả stream, caller mở stream mới
+                    closed = true;
+                    responseObserver.onError(toStatus(e));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                closed = true;
+                log.debug("Introspection stream cancelled by client: {}", Status.fromThrowable(t));
+            }
+
+            @Override
+            public void onCompleted() {
+                if (closed)
+                    return;
+                closed = true;
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    private TokenStatusBatch introspect(TokenBatch batch) {
+        List<IntrospectResponse> responses = authenticationService.introspectBatch(IntrospectBatchRequest.builder()
+                .tokens(batch.getTokensList())
+                .build());
+        TokenStatusBatch.Builder builder = TokenStatusBatch.newBuilder()
+                .setRequestId(batch.getRequestId());
+        for (IntrospectResponse response : responses)
+            builder.addResults(toTokenStatus(response));
+        return builder.build();
+    }
+
+    private TokenStatus toTokenStatus(IntrospectResponse response) {
+        TokenStatus.Builder builder = TokenStatus.newBuilder()
+                .setActive(response.isActive())
+                .setCacheMaxAge(authenticationService.introspectCacheMaxAge(response));
+        if (!response.isActive())
+            return builder.build();
+        if (response.getSub() != null)
+            builder.setSub(response.getSub());
+        if (response.getScope() != null)
+            builder.setScope(response.getScope());
+        if (response.getExp() != null)
+            builder.setExp(response.getExp());
+        if (response.getIat() != null)
+            builder.setIat(response.getIat());
+        if (response.getJti() != null)
+            builder.setJti(response.getJti());
+        return builder.build();
+    }
+
+    private static StatusRuntimeException toStatus(Exception e) {
+        if (e instanceof AppException appException) {
+            var errorCode = appException.getErrorcode();
+            Status status = switch (HttpStatus.valueOf(errorCode.getStatusCode().value())) {
+                case BAD_REQUEST -> Status.INVALID_ARGUMENT;
+                case UNAUTHORIZED -> Status.UNAUTHENTICATED;
+                case FORBIDDEN -> Status.PERMISSION_DENIED;
+                case NOT_FOUND -> Status.NOT_FOUND;
+                default -> Status.INTERNAL;
+            };
+            return status.withDescription(errorCode.getMessage()).asRuntimeException();
+        }
+        log.error("Introspection failed", e);
+        return Status.INTERNAL.withDescription("Introspection failed").asRuntimeException();
+    }
+}
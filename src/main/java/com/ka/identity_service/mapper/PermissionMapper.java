@@ -13,6 +13,8 @@ import org.mapstruct.MappingTarget;
 
 @Mapper(componentModel = "spring")
 public interface PermissionMapper {
+    @Mapping(target = "bitIndex", ignore = true)
+    @Mapping(target = "version", ignore = true)
     Permission toPermission(PermissionRequest request);
 
     PermissionResponse toPermissionResponse(Permission permission);
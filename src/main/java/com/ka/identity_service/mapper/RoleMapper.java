@@ -12,6 +12,7 @@ import org.mapstruct.Mapping;
 @Mapper(componentModel = "spring")
 public interface RoleMapper {
     @Mapping(target = "permissions", ignore = true)
+    @Mapping(target = "version", ignore = true)
     Role toRole(RoleRequest request);
     RoleResponse toRoleResponse(Role role);
 }
@@ -10,11 +10,17 @@ import org.mapstruct.MappingTarget;
 
 @Mapper(componentModel = "spring")
 public interface UserMapper {
+    @Mapping(target = "tokensValidAfter", ignore = true)
+    @Mapping(target = "profileVersion", ignore = true)
+    @Mapping(target = "version", ignore = true)
     User toUser(UserCreationRequest request);
     @Mapping(source = "firstName", target = "lastName")
 //    @Mapping(target = "lastName", ignore = true)
     UserResponse toUserResponse(User user);
 
     @Mapping(target = "roles", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "tokensValidAfter", ignore = true)
+    @Mapping(target = "profileVersion", ignore = true)
     void updateUser(@MappingTarget User user, UserUpdateRequest userUpdateRequest);
 }
@@ -0,0 +1,54 @@
+package com.ka.identity_service.mapper;
+
+import com.ka.identity_service.dto.response.PermissionResponse;
+import com.ka.identity_service.dto.response.RoleResponse;
+import com.ka.identity_service.dto.response.UserResponse;
+import com.ka.identity_service.repository.projection.RolePermissionRow;
+import com.ka.identity_service.repository.projection.UserRoleRow;
+import com.ka.identity_service.repository.projection.UserRow;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// Ghép UserResponse từ các projection (user, user_roles, role_permissions)
+// Thay cho UserMapper.toUserResponse ở các API đọc: không cần entity nên không cần transaction mở
+// trong lúc map, mỗi RoleResponse chỉ được tạo một lần và dùng chung cho các user có role đó
+@Component
+public class UserResponseAssembler {
+
+    public List<UserResponse> toUserResponses(List<UserRow> users, List<UserRoleRow> userRoles,
+                                              List<RolePermissionRow> rolePermissions) {
+        Map<String, Set<PermissionResponse>> permissionsByRole = new HashMap<>();
+        for (RolePermissionRow row : rolePermissions) {
+            permissionsByRole.computeIfAbsent(row.roleName(), name -> new LinkedHashSet<>())
+                    .add(new PermissionResponse(row.permissionName(), row.permissionDescription()));
+        }
+
+        Map<String, RoleResponse> rolesByName = new HashMap<>();
+        Map<String, Set<RoleResponse>> rolesByUser = new HashMap<>();
+        for (UserRoleRow row : userRoles) {
+            RoleResponse role = rolesByName.computeIfAbsent(row.roleName(), name -> new RoleResponse(
+                    name, row.roleDescription(), permissionsByRole.getOrDefault(name, new LinkedHashSet<>())));
+            rolesByUser.computeIfAbsent(row.userId(), id -> new LinkedHashSet<>()).add(role);
+        }
+
+        List<UserResponse> responses = new ArrayList<>(users.size());
+        for (UserRow user : users) {
+            responses.add(UserResponse.builder()
+                    .id(user.id())
+                    .username(user.username())
+                    .firstName(user.firstName())
+                    // Giữ nguyên mapping của UserMapper: @Mapping(source = "firstName", target = "lastName")
+                    .lastName(user.firstName())
+                    .dob(user.dob())
+                    .roles(rolesByUser.getOrDefault(user.id(), new LinkedHashSet<>()))
+                    .build());
+        }
+        return responses;
+    }
+
+    public UserResponse toUserResponse(UserRow user, List<UserRoleRow> userRoles,
+                                       List<RolePermissionRow> rolePermissions) {
+        return toUserResponses(List.of(user), userRoles, rolePermissions).get(0);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ka.identity_service.repository;
+
+import com.ka.identity_service.entity.CollectionVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface CollectionVersionRepository extends JpaRepository<CollectionVersion, String> {
+
+    @Query("select c.version from CollectionVersion c where c.name = :name")
+    Optional<Long> findVersion(@Param("name") String name);
+
+    // Tăng ngay trong DB: các instance ghi đồng thời không làm mất lần tăng nào
+    // Trả về 0 nếu chưa có dòng cho tập này
+    @Transactional
+    @Modifying
+    @Query("update CollectionVersion c set c.version = c.version + 1 where c.name = :name")
+    int increment(@Param("name") String name);
+}
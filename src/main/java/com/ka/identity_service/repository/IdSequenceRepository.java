@@ -0,0 +1,23 @@
+package com.ka.identity_service.repository;
+
+import com.ka.identity_service.entity.IdSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface IdSequenceRepository extends JpaRepository<IdSequence, String> {
+
+    // Tăng trong DB, dòng bị khóa tới hết transaction nên các instance cấp giá trị lần lượt
+    // Trả về 0 nếu chưa có dòng cho bộ đếm này
+    @Modifying
+    @Query("update IdSequence s set s.nextValue = s.nextValue + 1 where s.name = :name")
+    int increment(@Param("name") String name);
+
+    @Query("select s.nextValue from IdSequence s where s.name = :name")
+    Optional<Long> findNextValue(@Param("name") String name);
+}
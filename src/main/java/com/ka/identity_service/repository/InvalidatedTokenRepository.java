@@ -2,9 +2,19 @@ package com.ka.identity_service.repository;
 
 import com.ka.identity_service.entity.InvalidatedToken;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Set;
+
 @Repository
 
 public interface InvalidatedTokenRepository extends JpaRepository<InvalidatedToken, String> {
+
+    // Kiểm tra blacklist cho cả batch chỉ bằng 1 câu query: where id in (...)
+    // Chỉ select cột id, không load entity
+    @Query("select t.id from InvalidatedToken t where t.id in :ids")
+    Set<String> findExistingIds(@Param("ids") Collection<String> ids);
 }
@@ -2,8 +2,13 @@ package com.ka.identity_service.repository;
 
 import com.ka.identity_service.entity.Permission;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface PermissionRepository extends JpaRepository<Permission, String> {
+
+    // bitIndex lớn nhất đang được dùng, null nếu chưa có permission nào được đánh số
+    @Query("select max(p.bitIndex) from Permission p")
+    Integer findMaxBitIndex();
 }
@@ -0,0 +1,41 @@
+package com.ka.identity_service.repository;
+
+import com.ka.identity_service.entity.RefreshToken;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, String> {
+
+    // Đánh dấu token đã dùng một cách nguyên tử
+    // Trả về 0 nếu token đã được dùng trước đó (bị dùng lại)
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken t set t.used = true where t.id = :id and t.used = false and t.revoked = false")
+    int markUsed(@Param("id") String id);
+
+    // Thu hồi toàn bộ token trong một family
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true where t.familyId = :familyId")
+    int revokeFamily(@Param("familyId") String familyId);
+
+    // Thu hồi mọi phiên refresh của một user
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true where t.username = :username and t.revoked = false")
+    int revokeAllByUsername(@Param("username") String username);
+
+    // Token không còn dùng được: hết hạn hoặc family đã bị thu hồi
+    // Chỉ lấy id, xóa theo từng batch để không giữ khóa trên cả bảng
+    @Query("select t.id from RefreshToken t where t.expiryTime < :now or t.revoked = true")
+    List<String> findPurgeableIds(@Param("now") Date now, Pageable pageable);
+}
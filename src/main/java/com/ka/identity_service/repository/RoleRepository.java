@@ -1,10 +1,35 @@
 package com.ka.identity_service.repository;
 
 import com.ka.identity_service.entity.Role;
+import com.ka.identity_service.repository.projection.RolePermissionRow;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface RoleRepository extends JpaRepository<Role, String> {
 
+    // Load permissions cùng lúc, tránh N+1 query khi map sang RoleResponse
+    @Override
+    @EntityGraph(attributePaths = "permissions")
+    List<Role> findAll();
+
+    @EntityGraph(attributePaths = "permissions")
+    List<Role> findAllByNameIn(Collection<String> names);
+
+    @Query("select new com.ka.identity_service.repository.projection.RolePermissionRow(r.name, p.name, p.description) from Role r join r.permissions p")
+    List<RolePermissionRow> findAllPermissionRows();
+
+    @Query("select new com.ka.identity_service.repository.projection.RolePermissionRow(r.name, p.name, p.description) from Role r join r.permissions p where r.name in :roleNames")
+    List<RolePermissionRow> findPermissionRows(@Param("roleNames") Collection<String> roleNames);
+
+    // Version hiện tại của role, rỗng nếu chưa có (dùng khi ghi đè role đã có)
+    @Query("select r.version from Role r where r.name = :name")
+    Optional<Long> findVersion(@Param("name") String name);
 }
@@ -3,16 +3,62 @@ package com.ka.identity_service.repository;
 //Repository dùng tương tác với DBMS(JPA)
 
 import com.ka.identity_service.entity.User;
+import com.ka.identity_service.repository.projection.UserRoleRow;
+import com.ka.identity_service.repository.projection.UserTokenState;
+import com.ka.identity_service.repository.projection.UserRow;
+import com.ka.identity_service.repository.projection.UserVersion;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 //Tham số thứ 2 là id của class
 //1 request qua >= 3 layer
 //controller(mapping endpoint) -> service (xử lí logic) -> repository (tương tác dbms)
 @Repository
-public interface UserRepository extends JpaRepository<User, String> {
+public interface UserRepository extends JpaRepository<User, String>, UserRowRepository {
     boolean existsByUsername(String username);
     Optional<User> findByUsername(String username);
+
+    // Load luôn roles + permissions (dùng để build scope khi cấp token)
+    // Không cần giữ transaction / open-in-view để lazy load
+    @EntityGraph(attributePaths = {"roles", "roles.permissions"})
+    Optional<User> findWithAuthoritiesByUsername(String username);
+
+    // Projection cho các API đọc: chỉ select cột cần cho UserResponse,
+    // không tạo entity, không đưa vào persistence context, không có lazy collection
+    @Query("select new com.ka.identity_service.repository.projection.UserRow(u.id, u.username, u.firstName, u.lastName, u.dob) from User u")
+    List<UserRow> findAllRows();
+
+    @Query("select new com.ka.identity_service.repository.projection.UserRow(u.id, u.username, u.firstName, u.lastName, u.dob) from User u where u.id = :id")
+    Optional<UserRow> findRowById(@Param("id") String id);
+
+    @Query("select new com.ka.identity_service.repository.projection.UserRow(u.id, u.username, u.firstName, u.lastName, u.dob) from User u where u.username = :username")
+    Optional<UserRow> findRowByUsername(@Param("username") String username);
+
+    @Query("select new com.ka.identity_service.repository.projection.UserRoleRow(u.id, r.name, r.description) from User u join u.roles r")
+    List<UserRoleRow> findAllRoleRows();
+
+    @Query("select new com.ka.identity_service.repository.projection.UserRoleRow(u.id, r.name, r.description) from User u join u.roles r where u.id in :userIds")
+    List<UserRoleRow> findRoleRows(@Param("userIds") Collection<String> userIds);
+
+    @Query("select new com.ka.identity_service.repository.projection.UserVersion(u.username, u.version) from User u where u.id = :id")
+    Optional<UserVersion> findVersionById(@Param("id") String id);
+
+    // Optional rỗng nghĩa là user không tồn tại (đã bị xóa)
+    @Query("select new com.ka.identity_service.repository.projection.UserTokenState(coalesce(u.tokensValidAfter, 0), coalesce(u.profileVersion, 0)) from User u where u.username = :username")
+    Optional<UserTokenState> findTokenState(@Param("username") String username);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.tokensValidAfter = case when coalesce(u.tokensValidAfter, 0) < :now then :now"
+            + " else coalesce(u.tokensValidAfter, 0) + 1 end where u.username = :username")
+    int advanceTokensValidAfter(@Param("username") String username, @Param("now") long now);
 }
@@ -0,0 +1,16 @@
+package com.ka.identity_service.repository;
+
+import com.ka.identity_service.repository.projection.UserRow;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Projection động cho các API đọc có tham số fields: chỉ select các cột được yêu cầu
+// Thuộc tính không được chọn có giá trị null trong UserRow
+public interface UserRowRepository {
+
+    List<UserRow> findRows(Collection<String> attributes);
+
+    Optional<UserRow> findRow(String id, Collection<String> attributes);
+}
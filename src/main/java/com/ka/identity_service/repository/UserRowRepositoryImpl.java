@@ -0,0 +1,70 @@
+package com.ka.identity_service.repository;
+
+import com.ka.identity_service.entity.User;
+import com.ka.identity_service.repository.projection.UserRow;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Spring Data ghép fragment này vào UserRepository (tên interface + Impl)
+// Dùng Criteria tuple query: câu SELECT chỉ có các cột được chọn, kết quả không phải entity
+// nên không vào persistence context
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class UserRowRepositoryImpl implements UserRowRepository {
+
+    // Các thuộc tính của UserRow, theo thứ tự cột trong câu SELECT
+    private static final List<String> ATTRIBUTES = List.of("id", "username", "firstName", "lastName", "dob");
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Override
+    public List<UserRow> findRows(Collection<String> attributes) {
+        return select(attributes, null);
+    }
+
+    @Override
+    public Optional<UserRow> findRow(String id, Collection<String> attributes) {
+        return select(attributes, id).stream().findFirst();
+    }
+
+    private List<UserRow> select(Collection<String> attributes, String id) {
+        List<String> selected = ATTRIBUTES.stream().filter(attributes::contains).toList();
+        if (selected.isEmpty())
+            throw new IllegalArgumentException("No user attribute selected: " + attributes);
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<User> user = query.from(User.class);
+        List<Selection<?>> selections = selected.stream()
+                .<Selection<?>>map(attribute -> user.get(attribute).alias(attribute))
+                .toList();
+        query.multiselect(selections);
+        if (id != null)
+            query.where(criteriaBuilder.equal(user.get("id"), id));
+
+        return entityManager.createQuery(query).getResultList().stream()
+                .map(tuple -> new UserRow(
+                        value(tuple, selected, "id", String.class),
+                        value(tuple, selected, "username", String.class),
+                        value(tuple, selected, "firstName", String.class),
+                        value(tuple, selected, "lastName", String.class),
+                        value(tuple, selected, "dob", LocalDate.class)))
+                .toList();
+    }
+
+    private static <T> T value(Tuple tuple, List<String> selected, String attribute, Class<T> type) {
+        return selected.contains(attribute) ? tuple.get(attribute, type) : null;
+    }
+}
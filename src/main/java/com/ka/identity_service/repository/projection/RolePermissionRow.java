@@ -0,0 +1,5 @@
+package com.ka.identity_service.repository.projection;
+
+// Một dòng (role, permission) của bảng role_permissions kèm mô tả permission
+public record RolePermissionRow(String roleName, String permissionName, String permissionDescription) {
+}
@@ -0,0 +1,5 @@
+package com.ka.identity_service.repository.projection;
+
+// Một dòng (user, role) của bảng user_roles kèm mô tả role
+public record UserRoleRow(String userId, String roleName, String roleDescription) {
+}
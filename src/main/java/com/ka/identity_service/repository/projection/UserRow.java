@@ -0,0 +1,8 @@
+package com.ka.identity_service.repository.projection;
+
+import java.time.LocalDate;
+
+// Các cột của bảng user cần cho UserResponse (không có password, tokensValidAfter)
+// Tạo trực tiếp bằng constructor expression trong JPQL, không qua entity / persistence context
+public record UserRow(String id, String username, String firstName, String lastName, LocalDate dob) {
+}
@@ -0,0 +1,6 @@
+package com.ka.identity_service.repository.projection;
+
+// Các cột của user mà phần xác thực token cần, đọc cùng một query
+// tokensValidAfter: token epoch, profileVersion: phiên bản của profile nhúng trong token
+public record UserTokenState(Long tokensValidAfter, Long profileVersion) {
+}
@@ -0,0 +1,6 @@
+package com.ka.identity_service.repository.projection;
+
+// Chỉ các cột cần để tính ETag của GET /users/{id}, không load entity
+// username: kiểm tra quyền giống @PostAuthorize của getUser trước khi trả 304
+public record UserVersion(String username, Long version) {
+}
@@ -1,40 +1,33 @@
 package com.ka.identity_service.service;
 
 import com.ka.identity_service.dto.request.AuthenticationRequest;
+import com.ka.identity_service.dto.request.IntrospectBatchRequest;
 import com.ka.identity_service.dto.request.IntrospectRequest;
 import com.ka.identity_service.dto.request.LogoutRequest;
 import com.ka.identity_service.dto.request.RefreshRequest;
 import com.ka.identity_service.dto.response.AuthenticationResponse;
 import com.ka.identity_service.dto.response.IntrospectResponse;
-import com.ka.identity_service.entity.InvalidatedToken;
 import com.ka.identity_service.entity.User;
 import com.ka.identity_service.exception.AppException;
 import com.ka.identity_service.exception.ErrorCode;
-import com.ka.identity_service.repository.InvalidatedTokenRepository;
-import com.ka.identity_service.repository.UserRepository;
-import com.nimbusds.jose.*;
-import com.nimbusds.jose.crypto.MACSigner;
-import com.nimbusds.jose.crypto.MACVerifier;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
+import com.ka.identity_service.util.SingleFlight;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 
-import java.text.ParseException;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.Collections;
-import java.util.Date;
-import java.util.StringJoiner;
-import java.util.UUID;
+import java.util.*;
 
 @Slf4j
 @Service
@@ -42,12 +35,19 @@ import java.util.UUID;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class AuthenticationService {
 
-    UserRepository userRepository;
-    InvalidatedTokenRepository invalidatedTokenRepository;
-
+    TokenRevocationService tokenRevocationService;
+    PermissionRegistry permissionRegistry;
+    RefreshTokenService refreshTokenService;
+    TokenEpochRegistry tokenEpochRegistry;
+    TransactionTemplate transactionTemplate;
+    ProfileClaims profileClaims;
+    TokenMinter tokenMinter;
+    TokenValidator tokenValidator;
+    UserLookup userLookup;
+
+    // Gộp các request refresh đồng thời theo hash của refresh token
     @NonFinal
-    @Value("${jwt.signerKey}")
-    protected String SIGNER_KEY;
+    SingleFlight<String, AuthenticationResponse> refreshFlights;
 
     @NonFinal
 // Cho phép field này không bị đánh dấu final
@@ -63,43 +63,133 @@ public class AuthenticationService {
 
 
 
+    // Số token tối đa trong một lần gọi /auth/introspect/batch
+    @NonFinal
+    @Value("${jwt.introspect-batch-max-size:100}")
+    protected int INTROSPECT_BATCH_MAX_SIZE;
+
+    // Ngân sách stale (giây) khi caller cache kết quả introspect
+    // Token bị logout có thể vẫn được coi là hợp lệ tối đa trong khoảng này
+    @NonFinal
+    @Value("${jwt.introspect-cache-max-age:30}")
+    protected long INTROSPECT_CACHE_MAX_AGE;
+
+    // Bật claim "perms" dạng bitset thay cho việc liệt kê tên permission trong scope
+    @NonFinal
+    @Value("${jwt.compact-permissions:false}")
+    protected boolean COMPACT_PERMISSIONS;
+
+    // Khoảng thời gian (giây) giữ lại kết quả refresh để trả cho các lần retry
     @NonFinal
-    @Value("${jwt.refreshable-duration}")
-    protected long REFRESHABLE_DURATION;
+    @Value("${jwt.refresh-grace-period:10}")
+    protected long REFRESH_GRACE_PERIOD;
+
+    @PostConstruct
+    void initRefreshFlights() {
+        refreshFlights = new SingleFlight<>(Duration.ofSeconds(REFRESH_GRACE_PERIOD));
+    }
 
     // Hàm dùng để introspect JWT token
     // Mục đích: kiểm tra token có hợp lệ hay không (đúng chữ ký, chưa hết hạn, chưa bị logout...)
-    public IntrospectResponse introspect(IntrospectRequest request)
-            throws JOSEException, ParseException {
+    public IntrospectResponse introspect(IntrospectRequest request) {
 
         // Lấy JWT token từ request gửi lên
         // Thường token này được client gửi khi cần kiểm tra trạng thái đăng nhập
         var token = request.getToken();
 
         // Xác thực token
-        // Bên trong verifyToken thường sẽ:
+        // Bên trong validate sẽ:
         // - Verify chữ ký JWT
         // - Kiểm tra token hết hạn (exp)
         // - Kiểm tra token có nằm trong blacklist hay không
-        // Nếu token không hợp lệ → method này sẽ throw exception
-        boolean isValid = true;
-        try {
-            verifyToken(token, false);
-        }
-        catch(AppException e){
-            isValid = false;
-        }
+        // Token không hợp lệ → verdict khác VALID (không throw exception)
+        TokenValidation validation = tokenValidator.validate(token);
+        if (!validation.isValid())
+            return IntrospectResponse.builder()
+                    .valid(false)
+                    .build();
 
         // Nếu chạy được tới đây nghĩa là token hợp lệ
-        // Trả về response với valid = true
+        // Trả về response với active = true kèm các claim để caller có thể cache
+        return toIntrospectResponse(validation.claims());
+    }
+
+    // Thời gian (giây) mà caller được phép cache kết quả introspect
+    // - Không vượt quá thời gian sống còn lại của token
+    // - Không vượt quá ngân sách "stale" cho phép với việc revoke (logout)
+    public long introspectCacheMaxAge(IntrospectResponse response) {
+        long maxAge = INTROSPECT_CACHE_MAX_AGE;
+        if (response.isActive() && response.getExp() != null) {
+            long remaining = response.getExp() - Instant.now().getEpochSecond();
+            maxAge = Math.min(maxAge, remaining);
+        }
+        return Math.max(maxAge, 0);
+    }
+
+    private IntrospectResponse toIntrospectResponse(VerifiedToken claims) {
         return IntrospectResponse.builder()
-                .valid(isValid)
+                .valid(true)
+                .active(true)
+                .sub(claims.subject())
+                .scope(buildFullScope(claims.scope(), claims.perms()))
+                .exp(claims.expirationTime())
+                .iat(claims.issueTime())
+                .jti(claims.jwtId())
                 .build();
     }
 
+    // Ghép lại scope đầy đủ khi token dùng claim "perms" dạng bitset
+    private String buildFullScope(String scope, String perms) {
+        if (perms == null)
+            return scope;
+        StringJoiner stringJoiner = new StringJoiner(" ");
+        if (scope != null && !scope.isEmpty())
+            stringJoiner.add(scope);
+        permissionRegistry.decode(perms).forEach(stringJoiner::add);
+        return stringJoiner.toString();
+    }
+
+    // Introspect nhiều token trong một request (dùng cho API gateway)
+    // - Verify chữ ký + hạn của từng token song song (CPU-bound, không đụng DB)
+    // - Kiểm tra blacklist cho cả batch bằng 1 câu query IN (...)
+    // - Kết quả trả về đúng thứ tự token gửi lên
+    public List<IntrospectResponse> introspectBatch(IntrospectBatchRequest request) {
+        List<String> tokens = Objects.requireNonNullElse(request.getTokens(), List.of());
+        if (tokens.size() > INTROSPECT_BATCH_MAX_SIZE)
+            throw new AppException(ErrorCode.INTROSPECT_BATCH_TOO_LARGE);
+
+        // parallelStream giữ nguyên thứ tự phần tử khi gọi toList()
+        List<TokenValidation> verified = tokens.parallelStream()
+                .map(tokenValidator::verifySignature)
+                .toList();
+
+        List<String> jtis = new ArrayList<>(verified.size());
+        for (TokenValidation validation : verified) {
+            if (validation.isValid())
+                jtis.add(validation.claims().jwtId());
+        }
+
+        Set<String> revoked = jtis.isEmpty()
+                ? Set.of()
+                : tokenRevocationService.revokedAmong(jtis);
+
+        List<IntrospectResponse> responses = new ArrayList<>(verified.size());
+        for (TokenValidation validation : verified) {
+            if (validation.isValid()
+                    && (revoked.contains(validation.claims().jwtId())
+                    || tokenValidator.isRevokedByEpoch(validation.claims())))
+                validation = TokenValidation.invalid(TokenVerdict.REVOKED);
+            tokenValidator.record(validation);
+            responses.add(validation.isValid()
+                    ? toIntrospectResponse(validation.claims())
+                    : IntrospectResponse.builder().valid(false).build());
+        }
+        return responses;
+    }
 
     public AuthenticationResponse authenticate(AuthenticationRequest request){
-        var user = userRepository.findByUsername(request.getUsername())
+        // Các lần đăng nhập đồng thời cùng username dùng chung một query
+        var user = userLookup.findWithAuthoritiesByUsername(request.getUsername())
                 .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
         PasswordEncoder passwordEncoder = new BCryptPasswordEncoder(10);
         boolean authenticated = passwordEncoder.matches(request.getPassword(), user.getPassword());
@@ -109,67 +199,44 @@ public class AuthenticationService {
 
         var token = generateToken(user);
 
+        // Refresh token riêng (opaque), mở ra một phiên refresh mới
+        var refreshToken = refreshTokenService.issue(user.getUsername());
+
         return AuthenticationResponse.builder()
                 .token(token)
+                .refreshToken(refreshToken)
                 .authenticated(true)
                 .build();
     }
 
-    private String generateToken(User user) {
-        JWSHeader header = new JWSHeader(JWSAlgorithm.HS512);
-
-        // Khởi tạo đối tượng JWTClaimsSet bằng Builder pattern
-        JWTClaimsSet jwtClaimsSet = new JWTClaimsSet.Builder()
-
-                // Subject (sub): định danh chính của token, thường là username hoặc userId
-                .subject(user.getUsername())
-
-                // Issuer (iss): đơn vị phát hành token
-                .issuer("kaakaa.com")
-
-                // Issue Time (iat): thời điểm token được tạo
-                .issueTime(new Date())
-
-                // Expiration Time (exp): thời điểm token hết hạn
-                // Ở đây token sẽ hết hạn sau thời gian ược config kể từ thời điểm hiện tại
-                .expirationTime(new Date(
-                        Instant.now()
-                                .plus(VALID_DURATION, ChronoUnit.SECONDS)
-                                .toEpochMilli()
-                ))
-
-                // JWT ID (jti): định danh duy nhất của token
-                // Thường dùng để kiểm soát token (ví dụ: blacklist, logout)
-                // Tạo một UUID (Universally Unique Identifier) ngẫu nhiên
-                // UUID này có xác suất trùng lặp cực kỳ thấp
-                // toString() chuyển UUID thành chuỗi theo định dạng chuẩn: 8-4-4-4-12
-                // Ví dụ: "550e8400-e29b-41d4-a716-446655440000"
-                .jwtID(UUID.randomUUID().toString())
-
-
-                // Custom claim: scope
-                // Lưu thông tin quyền hạn / role của user
-                .claim("scope", buildScope(user))
-
-                // Xây dựng đối tượng JWTClaimsSet
-                .build();
-
-        Payload payload = new Payload(jwtClaimsSet.toJSONObject());
-
-        JWSObject jwsObject = new JWSObject(header, payload);
-
-        try {
-            jwsObject.sign(new MACSigner(SIGNER_KEY.getBytes()));
-            return jwsObject.serialize();
-        } catch (JOSEException e) {
-            log.error("Can not create token", e);
-            throw new RuntimeException(e);
-        }
+    // package-private: WarmUpService gọi trực tiếp với user giả lập
+    String generateToken(User user) {
+        // Khi bật compact permissions, permission được gom vào bitset thay vì nằm trong scope
+        Set<Integer> permissionIndexes = COMPACT_PERMISSIONS ? new TreeSet<>() : null;
+        String scope = buildScope(user, permissionIndexes);
+
+        // Custom claim: perms (bitset base64url của các bitIndex)
+        String perms = permissionIndexes != null && !permissionIndexes.isEmpty()
+                ? permissionRegistry.encode(permissionIndexes)
+                : null;
+
+        // Issue Time (iat) / Expiration Time (exp), tính bằng giây như Nimbus
+        long issueTime = Instant.now().getEpochSecond();
+        long expirationTime = issueTime + VALID_DURATION;
+
+        // TokenMinter ghi thẳng các claim sub, iss, iat, exp, tep (token epoch hiện tại của user),
+        // jti (UUID ngẫu nhiên), scope, perms và profile (jwt.profile-claims, để getMyInfo không phải đọc DB)
+        // rồi ký HS512 bằng jwt.signerKey
+        // Token vẫn verify / parse được bằng Nimbus như trước
+        long tokenEpoch = user.getTokensValidAfter() == null ? 0 : user.getTokensValidAfter();
+        return tokenMinter.mint(user.getUsername(), issueTime, expirationTime, tokenEpoch, scope, perms,
+                profileClaims.build(user));
     }
 
     // Hàm dùng để build chuỗi scope (authorities) đưa vào JWT token
 // Scope này sẽ chứa ROLE và PERMISSION của user
-    private String buildScope(User user){
+// Nếu permissionIndexes != null, permission có bitIndex được đưa vào set này thay vì vào scope
+    private String buildScope(User user, Set<Integer> permissionIndexes){
         // StringJoiner dùng để nối các chuỗi với nhau, ngăn cách bằng dấu space
         // Ví dụ kết quả: "ROLE_ADMIN USER_CREATE USER_DELETE"
         StringJoiner stringJoiner = new StringJoiner(" ");
@@ -192,7 +259,12 @@ public class AuthenticationService {
                             // Thêm permission vào scope
                             // Permission không cần tiền tố "ROLE_"
                             // Ví dụ: USER_CREATE, USER_DELETE
-                            .forEach(permission -> stringJoiner.add(permission.getName()));
+                            .forEach(permission -> {
+                                if (permissionIndexes != null && permission.getBitIndex() != null)
+                                    permissionIndexes.add(permission.getBitIndex());
+                                else
+                                    stringJoiner.add(permission.getName());
+                            });
             });
         }
         // Trả về chuỗi scope hoàn chỉnh để nhét vào JWT token
@@ -202,121 +274,82 @@ public class AuthenticationService {
     // Hàm xử lý logout
     // Mục đích: vô hiệu hóa JWT hiện tại bằng cách lưu token vào blacklist
     // Sau khi logout, token này sẽ không còn sử dụng được dù chưa hết hạn
-    public void logout(LogoutRequest request) throws ParseException, JOSEException {
+    public void logout(LogoutRequest request) {
 
         // Verify JWT token để đảm bảo:
         // - Token hợp lệ
         // - Chữ ký đúng
         // - Token chưa hết hạn
-        // Nếu không hợp lệ → exception được throw ra
-        try{
-            var signedToken = verifyToken(request.getToken(), false);
+        // Nếu không hợp lệ → không cần blacklist (token đã không dùng được)
+        TokenValidation validation = tokenValidator.validate(request.getToken());
+        if (validation.isValid()) {
+            var verifiedToken = validation.claims();
 
             // Lấy JWT ID (jti) từ token
             // jti là định danh duy nhất của mỗi JWT
             // Dùng để nhận diện token khi cần blacklist
-            String jti = signedToken.getJWTClaimsSet().getJWTID();
+            String jti = verifiedToken.jwtId();
 
             // Lấy thời gian hết hạn của token
             // Thời điểm này dùng để biết khi nào có thể xóa token khỏi blacklist
-            Date expiryTime = signedToken.getJWTClaimsSet().getExpirationTime();
-
-            // Tạo entity InvalidatedToken
-            // Entity này đại diện cho một token đã bị logout (bị vô hiệu hóa)
-            InvalidatedToken invalidatedToken = InvalidatedToken.builder()
-                    // Lưu jti làm khóa chính
-                    .id(jti)
-                    // Lưu thời gian hết hạn của token
-                    .expiryTime(expiryTime)
-                    .build();
+            Date expiryTime = new Date(verifiedToken.expirationTime() * 1000);
 
-            // Lưu token đã bị vô hiệu hóa vào database (hoặc Redis)
+            // Đưa token vào blacklist (bảng invalidated_token)
+            // Có hiệu lực ngay trong bộ nhớ, việc INSERT xuống DB được gom batch ở background
             // Mỗi request sau này sẽ kiểm tra:
-            // - jti có tồn tại trong bảng invalidated_token hay không
+            // - jti có nằm trong blacklist hay không
             // Nếu có → từ chối truy cập
-            invalidatedTokenRepository.save(invalidatedToken);
+            tokenRevocationService.revoke(jti, expiryTime);
         }
-        catch(AppException e){
-            log.info("Token already exprired");
+        else {
+            log.info("Token not revoked: {}", validation.verdict());
         }
 
-
+        // Thu hồi luôn phiên refresh nếu client gửi kèm refresh token
+        if (request.getRefreshToken() != null)
+            refreshTokenService.revoke(request.getRefreshToken());
     }
 
 
-    // Hàm dùng để verify (xác thực) JWT token
-    // Trả về SignedJWT nếu token hợp lệ
-    // Nếu token không hợp lệ → throw exception
-    private SignedJWT verifyToken(String token, boolean isRefresh) throws JOSEException, ParseException {
-
-        // Tạo verifier để kiểm tra chữ ký JWT
-        // MACVerifier dùng cho JWT ký bằng thuật toán HMAC (HS256, HS512, ...)
-        // SIGNER_KEY là secret key dùng để ký và verify token
-        JWSVerifier verifier = new MACVerifier(SIGNER_KEY.getBytes());
-
-        // Parse chuỗi token (String) thành đối tượng SignedJWT
-        // Nếu token sai format → ParseException
-        SignedJWT signedJWT = SignedJWT.parse(token);
-
-        // Lấy thời gian hết hạn (exp) từ payload của JWT
-        Date expiryTime = (isRefresh) ? new Date(signedJWT.getJWTClaimsSet().getIssueTime().toInstant().plus(REFRESHABLE_DURATION, ChronoUnit.SECONDS).toEpochMilli())
-        : signedJWT.getJWTClaimsSet().getExpirationTime();
-
-        // Verify chữ ký của JWT
-        // true  → chữ ký hợp lệ (token không bị chỉnh sửa)
-        // false → chữ ký không hợp lệ
-        boolean verified = signedJWT.verify(verifier);
-
-        // Kiểm tra 2 điều kiện bắt buộc:
-        // 1. Chữ ký hợp lệ (verified == true)
-        // 2. Token chưa hết hạn (expiryTime sau thời điểm hiện tại)
-        // Nếu 1 trong 2 điều kiện sai → token không hợp lệ
-        if(!(verified && expiryTime.after(new Date())))
-            // Ném exception xác thực thất bại
-            // Thường sẽ map sang HTTP 401 Unauthorized
-            throw new AppException(ErrorCode.UNAUTHENTICATED);
-
-
-        if(invalidatedTokenRepository
-                .existsById(signedJWT.getJWTClaimsSet().getJWTID()))
-            throw new AppException(ErrorCode.UNAUTHENTICATED);
-
-        // Nếu token hợp lệ → trả về SignedJWT
-        // Object này có thể dùng tiếp để:
-        // - Lấy username (sub)
-        // - Lấy scope / role / permission
-        return signedJWT;
+    // Logout khỏi mọi thiết bị của user đang đăng nhập
+    // Chỉ update token epoch của user (O(1)), không ghi blacklist cho từng token
+    public void logoutAll() {
+        var username = SecurityContextHolder.getContext().getAuthentication().getName();
+        tokenEpochRegistry.revokeAll(username);
     }
 
-    public AuthenticationResponse refreshToken(RefreshRequest request)
-            throws ParseException, JOSEException {
-
-        // Xác thực refresh token gửi lên từ client.
-        // Nếu token không hợp lệ, hết hạn hoặc đã bị vô hiệu hóa → verifyToken sẽ throw exception
-        var signToken = verifyToken(request.getToken(), true);
-
-        // Lấy JWT ID (jti) – định danh duy nhất của token
-        var jti = signToken.getJWTClaimsSet().getJWTID();
+    public AuthenticationResponse refreshToken(RefreshRequest request) {
 
-        // Lấy thời gian hết hạn của token cũ
-        var expiryTime = signToken.getJWTClaimsSet().getExpirationTime();
+        // request.token là refresh token (opaque) được cấp khi đăng nhập, không phải access token
+        // Mobile client hay gửi nhiều request refresh song song với cùng một token:
+        // - Các request đồng thời dùng chung một lần xử lý (single-flight theo hash của token)
+        // - Retry trong jwt.refresh-grace-period giây nhận lại đúng kết quả đó
+        //   thay vì bị coi là dùng lại token (reuse) và bị thu hồi cả phiên
+        var key = RefreshTokenService.hash(request.getToken());
+        var response = refreshFlights.execute(key,
+                // Mọi thao tác ghi DB của một lần refresh nằm trong một transaction
+                () -> transactionTemplate.execute(status -> doRefresh(request.getToken())));
 
-        // Tạo đối tượng InvalidatedToken để lưu token cũ vào blacklist
-        // nhằm đảm bảo token này không thể được sử dụng lại
-        InvalidatedToken invalidatedToken = InvalidatedToken.builder()
-                .id(jti)
-                .expiryTime(expiryTime)
-                .build();
+        if (response == null)
+            throw new AppException(ErrorCode.UNAUTHENTICATED);
+        return response;
+    }
 
-        // Lưu token cũ đã bị vô hiệu hóa vào database
-        invalidatedTokenRepository.save(invalidatedToken);
+    // Trả về null nếu refresh token không hợp lệ (sau khi đã thu hồi family nếu cần)
+    private AuthenticationResponse doRefresh(String refreshToken) {
 
-        // Lấy username (subject) từ token cũ
-        var username = signToken.getJWTClaimsSet().getSubject();
+        // rotate sẽ:
+        // - Kiểm tra token còn hạn, chưa bị thu hồi
+        // - Đánh dấu token cũ đã dùng và cấp refresh token mới trong cùng family
+        // - Nếu token cũ bị dùng lại → thu hồi cả family
+        // Không cần ghi blacklist cho access token cũ, nó sẽ tự hết hạn
+        var rotation = refreshTokenService.rotate(refreshToken).orElse(null);
+        if (rotation == null)
+            return null;
 
         // Tìm thông tin user trong database
         // Nếu không tồn tại → báo lỗi UNAUTHENTICATED
-        var user = userRepository.findByUsername(username).orElseThrow(
+        var user = userLookup.findWithAuthoritiesByUsername(rotation.username()).orElseThrow(
                 () -> new AppException(ErrorCode.UNAUTHENTICATED)
         );
 
@@ -326,6 +359,7 @@ public class AuthenticationService {
         // Trả về response chứa token mới và trạng thái authenticated = true
         return AuthenticationResponse.builder()
                 .token(token)
+                .refreshToken(rotation.refreshToken())
                 .authenticated(true)
                 .build();
     }
@@ -0,0 +1,50 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.CollectionVersion;
+import com.ka.identity_service.enums.VersionedCollection;
+import com.ka.identity_service.repository.CollectionVersionRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/*
+ * Bộ đếm version của từng tập dữ liệu (bảng collection_version), dùng làm ETag cho các API danh sách
+ * - Ghi vào tập → bump() trong cùng transaction với thay đổi, hoặc ngay sau khi thay đổi đã commit
+ * - Tính ETag chỉ là một query theo khóa chính, không đọc bảng dữ liệu
+ * - Caller đọc version TRƯỚC khi đọc dữ liệu: dữ liệu đổi giữa 2 lần đọc thì response mới mang ETag cũ,
+ *   lần poll sau nhận 200 chứ không bị giữ dữ liệu cũ dưới ETag mới
+ * - current() chạy trong transaction readOnly nên đọc cùng nơi với dữ liệu (replica nếu có)
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CollectionVersions {
+
+    CollectionVersionRepository collectionVersionRepository;
+
+    @Transactional(readOnly = true)
+    public long current(VersionedCollection collection) {
+        return collectionVersionRepository.findVersion(collection.key()).orElse(0L);
+    }
+
+    // Ví dụ W/"roles-12"
+    public String etag(VersionedCollection collection) {
+        return etag(collection.key() + "-" + current(collection));
+    }
+
+    @Transactional
+    public void bump(VersionedCollection... collections) {
+        for (VersionedCollection collection : collections) {
+            // Dòng được tạo bởi migration V3, chỉ thiếu khi schema do Hibernate tạo (ddl-auto)
+            if (collectionVersionRepository.increment(collection.key()) == 0)
+                collectionVersionRepository.save(new CollectionVersion(collection.key(), 1L));
+        }
+    }
+
+    // Weak ETag: cùng dữ liệu nhưng có thể được trả về dưới dạng JSON / CBOR / Smile
+    public static String etag(String value) {
+        return "W/\"" + value + "\"";
+    }
+}
@@ -0,0 +1,426 @@
+package com.ka.identity_service.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+/*
+ * Verify access token HS512 do chính service phát hành (TokenMinter) mà không qua SignedJWT.parse
+ * - Tìm 2 dấu chấm trên chính chuỗi token, không tách thành các String con
+ * - Header phải đúng {"alg":"HS512"} như TokenMinter ghi
+ * - HMAC tính trên byte ASCII của header.payload bằng Mac dùng lại của từng thread,
+ *   so sánh chữ ký bằng MessageDigest.isEqual (thời gian không phụ thuộc vị trí byte khác nhau)
+ * - Chỉ đọc các claim cần dùng (sub, iss, iat, exp, tep, jti, scope, perms, profile), không dựng cây JSON
+ * - Bất cứ thứ gì khác thường (header khác, claim lạ, escape trong chuỗi, số không phải số nguyên,
+ *   base64 không chuẩn...) → dùng Nimbus như trước, nên kết quả luôn giống Nimbus
+ * - Không dùng exception cho token không hợp lệ: trả về verdict BAD_SIGNATURE / MALFORMED
+ *   (chưa kiểm tra hạn và thu hồi, xem TokenValidator)
+ * Số lần đi đường nhanh / Nimbus: /actuator/metrics/token.verify
+ */
+@Component
+public class FastTokenVerifier {
+
+    static String ALGORITHM = "HmacSHA512";
+    static int SIGNATURE_LENGTH = 64;
+    static int[] BASE64_URL = new int[128];
+
+    static {
+        Arrays.fill(BASE64_URL, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++)
+            BASE64_URL[alphabet.charAt(i)] = i;
+    }
+
+    private final SecretKeySpec key;
+    private final MACVerifier nimbusVerifier;
+    private final ThreadLocal<State> states;
+    private final Counter fastPath;
+    private final Counter nimbusPath;
+
+    public FastTokenVerifier(@Value("${jwt.signerKey}") String signerKey, MeterRegistry meterRegistry) {
+        // Cùng key bytes với MACSigner / MACVerifier(SIGNER_KEY.getBytes())
+        this.key = new SecretKeySpec(signerKey.getBytes(), ALGORITHM);
+        try {
+            this.nimbusVerifier = new MACVerifier(signerKey.getBytes());
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Invalid signer key", e);
+        }
+        this.states = ThreadLocal.withInitial(() -> new State(newMac()));
+        this.fastPath = Counter.builder("token.verify").tag("path", "fast")
+                .description("Access tokens verified, by verification path")
+                .register(meterRegistry);
+        this.nimbusPath = Counter.builder("token.verify").tag("path", "nimbus")
+                .description("Access tokens verified, by verification path")
+                .register(meterRegistry);
+    }
+
+    // VALID (kèm claims) nếu chữ ký đúng, BAD_SIGNATURE / MALFORMED nếu không
+    public TokenValidation verify(String token) {
+        if (token == null)
+            return TokenValidation.invalid(TokenVerdict.MALFORMED);
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        // JWS luôn có đúng 3 phần, Nimbus cũng từ chối trường hợp này
+        if (second < 0 || token.indexOf('.', second + 1) >= 0) {
+            fastPath.increment();
+            return TokenValidation.invalid(TokenVerdict.MALFORMED);
+        }
+        if (!isOwnHeader(token, first))
+            return nimbus(token);
+
+        State state = states.get();
+
+        // Chữ ký phải decode ra đúng 64 byte
+        if (decode(token, second + 1, token.length(), state.signature) != SIGNATURE_LENGTH)
+            return nimbus(token);
+
+        // Byte của header.payload, token chứa ký tự ngoài ASCII → Nimbus
+        byte[] input = state.input(second);
+        for (int i = 0; i < second; i++) {
+            char c = token.charAt(i);
+            if (c > 0x7f)
+                return nimbus(token);
+            input[i] = (byte) c;
+        }
+
+        Mac mac = state.mac;
+        mac.update(input, 0, second);
+        try {
+            mac.doFinal(state.expected, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        if (!MessageDigest.isEqual(state.expected, state.signature)) {
+            fastPath.increment();
+            return TokenValidation.invalid(TokenVerdict.BAD_SIGNATURE);
+        }
+
+        byte[] payload = state.payload((second - first - 1) * 3 / 4 + 3);
+        int length = decode(token, first + 1, second, payload);
+        VerifiedToken claims = length < 0 ? null : new PayloadParser(payload, length).parse();
+        if (claims == null)
+            return nimbus(token);
+        fastPath.increment();
+        return TokenValidation.valid(claims);
+    }
+
+    // Verify bằng Nimbus (đường cũ), cũng dùng làm chuẩn so sánh trong test
+    TokenValidation nimbus(String token) {
+        nimbusPath.increment();
+        SignedJWT signedJWT;
+        try {
+            signedJWT = SignedJWT.parse(token);
+        } catch (ParseException e) {
+            return TokenValidation.invalid(TokenVerdict.MALFORMED);
+        }
+        try {
+            if (!signedJWT.verify(nimbusVerifier))
+                return TokenValidation.invalid(TokenVerdict.BAD_SIGNATURE);
+        } catch (JOSEException | RuntimeException e) {
+            // Thuật toán không phải HMAC / key không đủ dài cho thuật toán trong header
+            return TokenValidation.invalid(TokenVerdict.BAD_SIGNATURE);
+        }
+        try {
+            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+            return TokenValidation.valid(new VerifiedToken(
+                    claims.getSubject(),
+                    claims.getIssuer(),
+                    toEpochSecond(claims.getIssueTime()),
+                    toEpochSecond(claims.getExpirationTime()),
+                    claims.getLongClaim(TokenEpochRegistry.TOKEN_EPOCH_CLAIM),
+                    claims.getJWTID(),
+                    claims.getStringClaim("scope"),
+                    claims.getStringClaim(PermissionRegistry.PERMS_CLAIM),
+                    claims.getJSONObjectClaim(ProfileClaims.PROFILE_CLAIM)));
+        } catch (ParseException | RuntimeException e) {
+            return TokenValidation.invalid(TokenVerdict.MALFORMED);
+        }
+    }
+
+    private static Long toEpochSecond(Date date) {
+        return date == null ? null : date.getTime() / 1000;
+    }
+
+    private static boolean isOwnHeader(String token, int end) {
+        byte[] header = TokenMinter.HEADER;
+        if (end != header.length)
+            return false;
+        for (int i = 0; i < end; i++) {
+            if (token.charAt(i) != header[i])
+                return false;
+        }
+        return true;
+    }
+
+    // Decode base64url (không padding) của token[from, to) vào dst
+    // Trả về số byte, -1 nếu có ký tự lạ / độ dài sai / dst không đủ chỗ
+    private static int decode(String token, int from, int to, byte[] dst) {
+        int length = to - from;
+        if (length % 4 == 1)
+            return -1;
+        int size = length / 4 * 3 + (length % 4 == 0 ? 0 : length % 4 - 1);
+        if (size > dst.length)
+            return -1;
+
+        int d = 0;
+        int bits = 0;
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            char c = token.charAt(i);
+            int value = c < 128 ? BASE64_URL[c] : -1;
+            if (value < 0)
+                return -1;
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                dst[d++] = (byte) (bits >> 16);
+                dst[d++] = (byte) (bits >> 8);
+                dst[d++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 3) {
+            dst[d++] = (byte) (bits >> 10);
+            dst[d++] = (byte) (bits >> 2);
+        } else if (count == 2) {
+            dst[d++] = (byte) (bits >> 4);
+        }
+        return d;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can not initialize " + ALGORITHM, e);
+        }
+    }
+
+    // Buffer dùng lại của một thread
+    private static class State {
+        final Mac mac;
+        final byte[] signature = new byte[SIGNATURE_LENGTH];
+        final byte[] expected = new byte[SIGNATURE_LENGTH];
+        byte[] input = new byte[1024];
+        byte[] payload = new byte[768];
+
+        State(Mac mac) {
+            this.mac = mac;
+        }
+
+        byte[] input(int size) {
+            if (size > input.length)
+                input = new byte[size];
+            return input;
+        }
+
+        byte[] payload(int size) {
+            if (size > payload.length)
+                payload = new byte[size];
+            return payload;
+        }
+    }
+
+    // Đọc JSON payload với đúng các claim mà TokenMinter ghi
+    // parse() trả về null khi gặp bất cứ thứ gì khác thường → caller chuyển sang Nimbus
+    private static class PayloadParser {
+        final byte[] b;
+        final int length;
+        int pos;
+
+        String subject;
+        String issuer;
+        Long issueTime;
+        Long expirationTime;
+        Long tokenEpoch;
+        String jwtId;
+        String scope;
+        String perms;
+        Map<String, Object> profile;
+        // Claim đã gặp (bit theo thứ tự trong parse), claim trùng → Nimbus
+        int seen;
+
+        PayloadParser(byte[] b, int length) {
+            this.b = b;
+            this.length = length;
+        }
+
+        VerifiedToken parse() {
+            skipWhitespace();
+            if (!consume('{'))
+                return null;
+            skipWhitespace();
+            if (!consume('}')) {
+                do {
+                    skipWhitespace();
+                    if (!claim())
+                        return null;
+                    skipWhitespace();
+                } while (consume(','));
+                if (!consume('}'))
+                    return null;
+            }
+            skipWhitespace();
+            if (pos != length)
+                return null;
+            return new VerifiedToken(subject, issuer, issueTime, expirationTime, tokenEpoch, jwtId, scope, perms, profile);
+        }
+
+        private boolean claim() {
+            if (!consume('"'))
+                return false;
+            int start = pos;
+            while (pos < length && b[pos] != '"') {
+                if (b[pos] == '\\')
+                    return false;
+                pos++;
+            }
+            if (pos >= length)
+                return false;
+            int end = pos++;
+            skipWhitespace();
+            if (!consume(':'))
+                return false;
+            skipWhitespace();
+
+            if (is(start, end, "sub") && mark(0))
+                return (subject = string()) != null;
+            if (is(start, end, "iss") && mark(1))
+                return (issuer = string()) != null;
+            if (is(start, end, "iat") && mark(2))
+                return (issueTime = number()) != null;
+            if (is(start, end, "exp") && mark(3))
+                return (expirationTime = number()) != null;
+            if (is(start, end, "jti") && mark(4))
+                return (jwtId = string()) != null;
+            if (is(start, end, "scope") && mark(5))
+                return (scope = string()) != null;
+            if (is(start, end, "perms") && mark(6))
+                return (perms = string()) != null;
+            if (is(start, end, "profile") && mark(7))
+                return (profile = object()) != null;
+            if (is(start, end, "tep") && mark(8))
+                return (tokenEpoch = number()) != null;
+            // Claim lạ hoặc bị trùng
+            return false;
+        }
+
+        private boolean mark(int bit) {
+            if ((seen & 1 << bit) != 0)
+                return false;
+            seen |= 1 << bit;
+            return true;
+        }
+
+        private boolean is(int start, int end, String name) {
+            if (end - start != name.length())
+                return false;
+            for (int i = 0; i < name.length(); i++) {
+                if (b[start + i] != name.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+
+        // Chuỗi không có escape / ký tự điều khiển, ngược lại → null
+        private String string() {
+            if (!consume('"'))
+                return null;
+            int start = pos;
+            boolean ascii = true;
+            while (pos < length) {
+                int c = b[pos] & 0xff;
+                if (c == '"') {
+                    int end = pos++;
+                    return new String(b, start, end - start,
+                            ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+                }
+                if (c == '\\' || c < 0x20)
+                    return null;
+                if (c >= 0x80)
+                    ascii = false;
+                pos++;
+            }
+            return null;
+        }
+
+        // Số nguyên không âm, không có số 0 ở đầu, tối đa 18 chữ số
+        private Long number() {
+            int start = pos;
+            long value = 0;
+            while (pos < length && b[pos] >= '0' && b[pos] <= '9') {
+                value = value * 10 + (b[pos] - '0');
+                pos++;
+            }
+            int digits = pos - start;
+            if (digits == 0 || digits > 18 || (digits > 1 && b[start] == '0'))
+                return null;
+            if (pos < length && b[pos] != ',' && b[pos] != '}' && !isWhitespace(b[pos]))
+                return null;
+            return value;
+        }
+
+        // Object lồng (claim profile): tìm điểm kết thúc rồi để Nimbus parse riêng đoạn đó
+        private Map<String, Object> object() {
+            if (pos >= length || b[pos] != '{')
+                return null;
+            int start = pos;
+            int depth = 0;
+            while (pos < length) {
+                int c = b[pos++];
+                if (c == '"') {
+                    while (pos < length && b[pos] != '"')
+                        pos += b[pos] == '\\' ? 2 : 1;
+                    pos++;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        try {
+                            return JSONObjectUtils.parse(new String(b, start, pos - start, StandardCharsets.UTF_8));
+                        } catch (ParseException e) {
+                            return null;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        private boolean consume(char c) {
+            if (pos < length && b[pos] == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (pos < length && isWhitespace(b[pos]))
+                pos++;
+        }
+
+        private static boolean isWhitespace(byte c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.IdSequence;
+import com.ka.identity_service.entity.Permission;
+import com.ka.identity_service.enums.VersionedCollection;
+import com.ka.identity_service.repository.IdSequenceRepository;
+import com.ka.identity_service.repository.PermissionRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Registry ánh xạ Permission <-> bitIndex (số nguyên nhỏ, cố định)
+ * - bitIndex được lưu trong DB nên giống nhau giữa các instance
+ * - Dùng để encode/decode claim "perms" (bitset base64url) trong JWT
+ * - bitIndex cấp từ bộ đếm chỉ tăng (id_sequence), index của permission đã xóa không bao giờ được dùng lại
+ * - Dữ liệu được cache trong bộ nhớ, load lại khi permission thay đổi ở instance này,
+ *   khi bộ đếm version của tập permissions đổi (thay đổi ở instance khác, kiểm tra định kỳ)
+ *   hoặc khi gặp bitIndex chưa được cấp lúc load (và version đã đổi)
+ * - bitIndex đã được cấp nhưng không còn permission (đã xóa) bị bỏ qua khi decode, không load lại
+ * - Đường decode JWT chỉ đọc DB, không ghi
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class PermissionRegistry {
+
+    // Tên claim chứa bitset permission trong JWT
+    public static final String PERMS_CLAIM = "perms";
+
+    // Tên bộ đếm trong bảng id_sequence
+    static final String BIT_INDEX_SEQUENCE = "permission_bit_index";
+
+    PermissionRepository permissionRepository;
+    IdSequenceRepository idSequenceRepository;
+    CollectionVersions collectionVersions;
+
+    // Snapshot bất biến, thay thế nguyên cả object khi reload
+    @NonFinal
+    volatile Snapshot snapshot;
+
+    // Tăng mỗi khi ánh xạ thay đổi, cache phía sau (authority set) dựa vào đây để tự làm mới
+    AtomicInteger generation = new AtomicInteger();
+
+    // names: bitIndex → tên permission (null nếu permission đã bị xóa)
+    // assigned: số bitIndex đã được cấp (id_sequence) lúc load, index nhỏ hơn mà không có tên là đã bị xóa
+    // version: version của tập permissions lúc load
+    record Snapshot(String[] names, long assigned, long version) {
+    }
+
+    // Gán bitIndex cho permission mới, lấy từ bộ đếm chỉ tăng
+    // Transaction riêng: giá trị đã cấp không bị cấp lại kể cả khi lưu permission lỗi (chỉ bỏ trống index)
+    @Transactional
+    public void assignIndex(Permission permission) {
+        long next;
+        if (idSequenceRepository.increment(BIT_INDEX_SEQUENCE) == 0) {
+            // Dòng được tạo bởi migration V4, chỉ thiếu khi schema do Hibernate tạo (ddl-auto)
+            Integer max = permissionRepository.findMaxBitIndex();
+            next = max == null ? 0 : max + 1;
+            idSequenceRepository.save(new IdSequence(BIT_INDEX_SEQUENCE, next + 1));
+        } else {
+            next = idSequenceRepository.findNextValue(BIT_INDEX_SEQUENCE).orElseThrow() - 1;
+        }
+        permission.setBitIndex(Math.toIntExact(next));
+    }
+
+    // Encode tập bitIndex thành chuỗi base64url (không padding)
+    public String encode(Collection<Integer> indexes) {
+        BitSet bitSet = new BitSet();
+        indexes.forEach(bitSet::set);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bitSet.toByteArray());
+    }
+
+    // Decode claim "perms" thành danh sách tên permission
+    public List<String> decode(String encoded) {
+        if (encoded == null || encoded.isEmpty())
+            return List.of();
+
+        BitSet bitSet = BitSet.valueOf(Base64.getUrlDecoder().decode(encoded));
+        Snapshot loaded = snapshot();
+        if (bitSet.length() > loaded.assigned()) {
+            // Có bit chưa được cấp lúc load → permission mới được tạo ở instance khác
+            loaded = reloadIfChanged(loaded);
+        }
+        String[] names = loaded.names();
+
+        List<String> result = new ArrayList<>(bitSet.cardinality());
+        for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1)) {
+            if (i < names.length && names[i] != null)
+                result.add(names[i]);
+            else
+                // Permission đã bị xóa (index không bao giờ được dùng lại), token cũ vẫn còn hạn
+                log.warn("Unknown permission bit index {}", i);
+        }
+        return result;
+    }
+
+    // Xóa cache, lần decode sau sẽ load lại từ DB
+    public void invalidate() {
+        snapshot = null;
+        generation.incrementAndGet();
+    }
+
+    // Load sẵn ánh xạ bitIndex → permission (warm-up lúc khởi động)
+    public void preload() {
+        snapshot();
+    }
+
+    public int generation() {
+        return generation.get();
+    }
+
+    // Permission bị tạo / xóa / ghi đè ở instance khác → bộ đếm version của tập permissions tăng
+    // Chưa load thì không cần kiểm tra
+    @Scheduled(fixedDelayString = "${app.permission-registry.refresh-interval-ms:5000}")
+    public void refreshIfChanged() {
+        Snapshot loaded = snapshot;
+        if (loaded == null)
+            return;
+        if (collectionVersions.current(VersionedCollection.PERMISSIONS) != loaded.version()) {
+            log.debug("Permissions changed on another instance, reloading bit indexes");
+            invalidate();
+        }
+    }
+
+    private Snapshot snapshot() {
+        Snapshot loaded = snapshot;
+        return loaded != null ? loaded : reload(null);
+    }
+
+    // Chỉ load lại khi version của tập permissions đã đổi so với lúc load,
+    // bit vẫn chưa biết sau đó được coi như đã bị xóa
+    private synchronized Snapshot reloadIfChanged(Snapshot seen) {
+        Snapshot current = snapshot;
+        if (current != seen)
+            // Thread khác vừa load lại / invalidate
+            return current != null ? current : reload(null);
+        if (collectionVersions.current(VersionedCollection.PERMISSIONS) == seen.version())
+            return seen;
+        return reload(seen);
+    }
+
+    private synchronized Snapshot reload(Snapshot seen) {
+        Snapshot current = snapshot;
+        if (current != null && current != seen)
+            return current;
+
+        // Đọc version và bộ đếm trước dữ liệu: thay đổi xảy ra giữa các lần đọc sẽ bị refreshIfChanged phát hiện
+        long version = collectionVersions.current(VersionedCollection.PERMISSIONS);
+        long assigned = idSequenceRepository.findNextValue(BIT_INDEX_SEQUENCE).orElse(0L);
+        List<Permission> permissions = permissionRepository.findAll();
+
+        int length = permissions.stream()
+                .map(Permission::getBitIndex)
+                .filter(Objects::nonNull)
+                .max(Integer::compareTo)
+                .map(max -> max + 1)
+                .orElse(0);
+        String[] names = new String[length];
+        for (Permission permission : permissions) {
+            // Migration V4 đã đánh số mọi permission cũ
+            if (permission.getBitIndex() == null)
+                log.warn("Permission {} has no bit index", permission.getName());
+            else
+                names[permission.getBitIndex()] = permission.getName();
+        }
+
+        Snapshot loaded = new Snapshot(names, Math.max(assigned, length), version);
+        snapshot = loaded;
+        generation.incrementAndGet();
+        return loaded;
+    }
+}
@@ -3,6 +3,7 @@ package com.ka.identity_service.service;
 import com.ka.identity_service.dto.request.PermissionRequest;
 import com.ka.identity_service.dto.response.PermissionResponse;
 import com.ka.identity_service.entity.Permission;
+import com.ka.identity_service.enums.VersionedCollection;
 import com.ka.identity_service.mapper.PermissionMapper;
 import com.ka.identity_service.repository.PermissionRepository;
 import lombok.AccessLevel;
@@ -10,8 +11,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
 @Service
 @Slf4j
@@ -20,19 +23,46 @@ import java.util.List;
 public class PermissionService {
     PermissionRepository permissionRepository;
     PermissionMapper permissionMapper;
+    PermissionRegistry permissionRegistry;
+    UserResponseCache userResponseCache;
+    CollectionVersions collectionVersions;
 
     public PermissionResponse create(PermissionRequest request){
         Permission permission = permissionMapper.toPermission(request);
+        // Ghi đè permission đã có: giữ version hiện tại (giống RoleService.create) và bitIndex,
+        // token đã cấp vẫn decode đúng permission này
+        Optional<Permission> existing = permissionRepository.findById(permission.getName());
+        if (existing.isPresent()) {
+            permission.setVersion(existing.get().getVersion());
+            permission.setBitIndex(existing.get().getBitIndex());
+        } else {
+            permissionRegistry.assignIndex(permission);
+        }
         permission = permissionRepository.save(permission);
+        permissionRegistry.invalidate();
+        // RoleResponse / UserResponse chứa description của permission đã có
+        if (existing.isPresent())
+            collectionVersions.bump(VersionedCollection.PERMISSIONS, VersionedCollection.ROLES, VersionedCollection.USERS);
+        else
+            collectionVersions.bump(VersionedCollection.PERMISSIONS);
         return permissionMapper.toPermissionResponse(permission);
     }
 
+    @Transactional(readOnly = true)
     public List<PermissionResponse> getAll(){
         var permissions = permissionRepository.findAll();
         return permissions.stream().map(permissionMapper::toPermissionResponse).toList();
     }
 
+    // ETag của GET /permissions, không đọc bảng permission
+    public String getAllEtag(){
+        return collectionVersions.etag(VersionedCollection.PERMISSIONS);
+    }
+
     public void delete(String permission){
         permissionRepository.deleteById(permission);
+        permissionRegistry.invalidate();
+        userResponseCache.evictByPermission(permission);
+        collectionVersions.bump(VersionedCollection.PERMISSIONS, VersionedCollection.ROLES, VersionedCollection.USERS);
     }
 }
@@ -0,0 +1,126 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.dto.response.RoleResponse;
+import com.ka.identity_service.dto.response.UserResponse;
+import com.ka.identity_service.entity.Role;
+import com.ka.identity_service.entity.User;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ * Claim "profile" trong access token (bật bằng jwt.profile-claims)
+ * - Chứa một phần của UserResponse: id, firstName, lastName, dob (username chính là sub)
+ *   và tên các role của user ("roles", cách nhau bởi dấu space)
+ * - "v": phiên bản định dạng claim, "pv": user.profileVersion lúc cấp token
+ * - Claim vượt quá jwt.profile-claims-max-size byte thì không được thêm vào token
+ * - getMyInfo trả lời thẳng từ claim nếu pv vẫn bằng profileVersion hiện tại,
+ *   ngược lại (profile đã đổi, token cũ) thì đọc từ DB như bình thường
+ * - Chi tiết role (description, permissions) không nằm trong token, caller tra theo tên (có cache);
+ *   role không còn tồn tại thì cũng đọc từ DB
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ProfileClaims {
+
+    public static final String PROFILE_CLAIM = "profile";
+
+    // Tăng khi đổi cấu trúc claim, token mang định dạng cũ sẽ bị bỏ qua
+    static long FORMAT_VERSION = 2;
+
+    TokenEpochRegistry tokenEpochRegistry;
+    boolean enabled;
+    int maxSize;
+
+    public ProfileClaims(TokenEpochRegistry tokenEpochRegistry,
+                         @Value("${jwt.profile-claims:false}") boolean enabled,
+                         @Value("${jwt.profile-claims-max-size:512}") int maxSize) {
+        this.tokenEpochRegistry = tokenEpochRegistry;
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Giá trị claim cho user, null nếu tắt hoặc vượt giới hạn kích thước
+    public Map<String, Object> build(User user) {
+        if (!enabled)
+            return null;
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("v", FORMAT_VERSION);
+        profile.put("pv", user.getProfileVersion() == null ? 0L : user.getProfileVersion());
+        profile.put("id", user.getId());
+        putIfNotNull(profile, "firstName", user.getFirstName());
+        putIfNotNull(profile, "lastName", user.getLastName());
+        if (user.getDob() != null)
+            profile.put("dob", user.getDob().toString());
+        profile.put("roles", user.getRoles() == null ? "" : user.getRoles().stream()
+                .map(Role::getName)
+                .sorted()
+                .collect(Collectors.joining(" ")));
+
+        if (JSONObjectUtils.toJSONString(profile).length() > maxSize)
+            return null;
+        return profile;
+    }
+
+    // UserResponse từ claim của token đã được verify, null nếu không dùng được (→ đọc DB)
+    // roleResolver: tên role → RoleResponse, null nếu có role không tìm thấy
+    public UserResponse read(Jwt jwt, Function<List<String>, Set<RoleResponse>> roleResolver) {
+        if (!enabled || !(jwt.getClaims().get(PROFILE_CLAIM) instanceof Map<?, ?> profile))
+            return null;
+        if (!(profile.get("v") instanceof Number format) || format.longValue() != FORMAT_VERSION)
+            return null;
+        if (!(profile.get("pv") instanceof Number version)
+                || version.longValue() != tokenEpochRegistry.profileVersion(jwt.getSubject()))
+            return null;
+        if (!(profile.get("roles") instanceof String roleNames))
+            return null;
+
+        try {
+            List<String> names = Arrays.stream(roleNames.split(" "))
+                    .filter(name -> !name.isEmpty())
+                    .toList();
+            Set<RoleResponse> roles = names.isEmpty() ? new LinkedHashSet<>() : roleResolver.apply(names);
+            if (roles == null)
+                return null;
+            String firstName = stringOf(profile.get("firstName"));
+            return UserResponse.builder()
+                    .id(stringOf(profile.get("id")))
+                    .username(jwt.getSubject())
+                    .firstName(firstName)
+                    // Giống UserMapper: @Mapping(source = "firstName", target = "lastName")
+                    .lastName(firstName)
+                    .dob(profile.get("dob") instanceof String dob ? LocalDate.parse(dob) : null)
+                    .roles(roles)
+                    .build();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static void putIfNotNull(Map<String, Object> profile, String name, String value) {
+        if (value != null)
+            profile.put(name, value);
+    }
+
+    private static String stringOf(Object value) {
+        return value instanceof String string ? string : null;
+    }
+}
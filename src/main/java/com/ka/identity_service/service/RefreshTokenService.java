@@ -0,0 +1,133 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.RefreshToken;
+import com.ka.identity_service.exception.AppException;
+import com.ka.identity_service.exception.ErrorCode;
+import com.ka.identity_service.repository.RefreshTokenRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// Quản lý refresh token dạng opaque, xoay vòng (rotate) sau mỗi lần dùng
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RefreshTokenService {
+
+    static SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    RefreshTokenRepository refreshTokenRepository;
+
+    // Thời gian sống của một phiên refresh (tính từ lúc đăng nhập)
+    @NonFinal
+    @Value("${jwt.refreshable-duration}")
+    protected long REFRESHABLE_DURATION;
+
+    // Số dòng xóa trong một câu DELETE khi dọn bảng refresh_token
+    @NonFinal
+    @Value("${jwt.refresh-purge-batch-size:1000}")
+    protected int PURGE_BATCH_SIZE;
+
+    // Kết quả của một lần rotate: user sở hữu token và refresh token mới
+    public record Rotation(String username, String refreshToken) {
+    }
+
+    // Cấp refresh token cho một phiên đăng nhập mới (family mới)
+    public String issue(String username) {
+        Date expiryTime = Date.from(Instant.now().plus(REFRESHABLE_DURATION, ChronoUnit.SECONDS));
+        return issue(username, UUID.randomUUID().toString(), expiryTime);
+    }
+
+    // Dùng refresh token để lấy token mới
+    // - Token không tồn tại / hết hạn / đã bị thu hồi → Optional rỗng
+    // - Token đã được dùng rồi → revoke cả family rồi trả về Optional rỗng
+    // Không throw exception để việc revoke family vẫn được commit khi chạy trong transaction
+    public Optional<Rotation> rotate(String rawToken) {
+        RefreshToken current = refreshTokenRepository.findById(hash(rawToken)).orElse(null);
+
+        if (current == null || current.isRevoked() || current.getExpiryTime().before(new Date()))
+            return Optional.empty();
+
+        // markUsed chỉ thành công với token chưa dùng, tránh 2 request cùng rotate một token
+        if (current.isUsed() || refreshTokenRepository.markUsed(current.getId()) == 0) {
+            log.warn("Refresh token reuse detected, revoking family {}", current.getFamilyId());
+            refreshTokenRepository.revokeFamily(current.getFamilyId());
+            return Optional.empty();
+        }
+
+        String next = issue(current.getUsername(), current.getFamilyId(), current.getExpiryTime());
+        return Optional.of(new Rotation(current.getUsername(), next));
+    }
+
+    // Thu hồi cả phiên đăng nhập chứa refresh token này (dùng khi logout)
+    public void revoke(String rawToken) {
+        refreshTokenRepository.findById(hash(rawToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId()));
+    }
+
+    // Dọn refresh_token: mỗi lần rotate thêm một dòng, không dọn thì bảng chỉ tăng
+    // - Xóa token hết hạn và token của family đã bị thu hồi: tra cứu token không tồn tại cũng trả về rỗng
+    // - Giữ token đã rotate (used) của family còn hạn để vẫn phát hiện được việc dùng lại
+    @Scheduled(fixedDelayString = "${jwt.refresh-purge-interval-ms:3600000}",
+            initialDelayString = "${jwt.refresh-purge-interval-ms:3600000}")
+    public int purge() {
+        Date now = new Date();
+        int purged = 0;
+        List<String> ids;
+        do {
+            ids = refreshTokenRepository.findPurgeableIds(now, PageRequest.of(0, PURGE_BATCH_SIZE));
+            if (!ids.isEmpty())
+                refreshTokenRepository.deleteAllByIdInBatch(ids);
+            purged += ids.size();
+        } while (ids.size() == PURGE_BATCH_SIZE);
+        if (purged > 0)
+            log.info("Purged {} expired or revoked refresh tokens", purged);
+        return purged;
+    }
+
+    private String issue(String username, String familyId, Date expiryTime) {
+        byte[] bytes = new byte[32];
+        SECURE_RANDOM.nextBytes(bytes);
+        String rawToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        refreshTokenRepository.save(RefreshToken.builder()
+                .id(hash(rawToken))
+                .familyId(familyId)
+                .username(username)
+                .expiryTime(expiryTime)
+                .build());
+        return rawToken;
+    }
+
+    // Chỉ lưu SHA-256 của token, lộ DB cũng không dùng được token
+    static String hash(String rawToken) {
+        if (rawToken == null)
+            throw new AppException(ErrorCode.UNAUTHENTICATED);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(rawToken.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
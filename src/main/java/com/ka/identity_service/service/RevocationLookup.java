@@ -0,0 +1,174 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * Chạy các query kiểm tra thu hồi token (blacklist jti, token epoch) với timeout và circuit breaker
+ * để DB chậm / sập không giữ request thread
+ * - Query chạy trên pool riêng (tối đa jwt.revocation.lookup.max-concurrency thread), request thread
+ *   chỉ chờ tối đa jwt.revocation.lookup.timeout; pool đầy cũng tính là lỗi
+ * - failure-threshold lỗi liên tiếp → breaker mở, trong open-duration không query DB nữa
+ * - Không có kết quả từ DB thì caller dùng trạng thái đã biết trong bộ nhớ, còn lại theo failOpen():
+ *   trong fail-open-for đầu tiên của sự cố coi như token chưa bị thu hồi, sau đó từ chối (fail-closed)
+ * Theo dõi: token.revocation.lookup{outcome=...}, token.revocation.fallback{decision=allow|deny}
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RevocationLookup {
+
+    CircuitBreaker circuitBreaker;
+    ThreadPoolExecutor executor;
+    TransactionTemplate readOnly;
+    long timeoutNanos;
+    Duration failOpenFor;
+
+    Counter succeeded;
+    Counter failed;
+    Counter timedOut;
+    Counter rejected;
+    Counter shortCircuited;
+    Counter allowed;
+    Counter denied;
+
+    public RevocationLookup(PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${jwt.revocation.lookup.timeout:200ms}") Duration timeout,
+                            @Value("${jwt.revocation.lookup.max-concurrency:16}") int maxConcurrency,
+                            @Value("${jwt.revocation.lookup.failure-threshold:5}") int failureThreshold,
+                            @Value("${jwt.revocation.lookup.open-duration:5s}") Duration openDuration,
+                            @Value("${jwt.revocation.lookup.fail-open-for:30s}") Duration failOpenFor) {
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openDuration);
+        this.timeoutNanos = timeout.toNanos();
+        this.failOpenFor = failOpenFor;
+
+        // Timeout của transaction (tính bằng giây) được áp vào query JDBC,
+        // thread trong pool không bị giữ mãi khi query treo
+        // Hibernate làm tròn xuống số giây còn lại trước mỗi câu lệnh (còn < 1s là coi như hết hạn)
+        // nên cần dư ít nhất 1 giây so với timeout mà request thread chờ
+        this.readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.setTimeout((int) timeout.toSeconds() + 2);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxConcurrency * 8), runnable -> {
+            Thread thread = new Thread(runnable, "revocation-lookup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        this.succeeded = outcome(meterRegistry, "ok");
+        this.failed = outcome(meterRegistry, "error");
+        this.timedOut = outcome(meterRegistry, "timeout");
+        this.rejected = outcome(meterRegistry, "rejected");
+        this.shortCircuited = outcome(meterRegistry, "short_circuited");
+        this.allowed = decision(meterRegistry, "allow");
+        this.denied = decision(meterRegistry, "deny");
+        Gauge.builder("token.revocation.lookup.circuit", circuitBreaker, breaker -> breaker.state().ordinal())
+                .description("Revocation lookup circuit state: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+    }
+
+    // Kết quả từ DB, empty nếu breaker đang mở, query lỗi hoặc quá timeout
+    public <T> Optional<T> query(Supplier<T> lookup) {
+        if (!circuitBreaker.tryAcquire()) {
+            shortCircuited.increment();
+            return Optional.empty();
+        }
+
+        Future<T> future;
+        try {
+            future = executor.submit(() -> readOnly.execute(status -> lookup.get()));
+        } catch (RejectedExecutionException e) {
+            return failure(rejected, "pool is saturated");
+        }
+
+        try {
+            T result = future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            if (circuitBreaker.state() != CircuitBreaker.State.CLOSED)
+                log.info("Revocation lookups recovered, circuit closed");
+            circuitBreaker.onSuccess();
+            succeeded.increment();
+            return Optional.ofNullable(result);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return failure(timedOut, "timed out");
+        } catch (ExecutionException e) {
+            log.debug("Revocation lookup failed", e.getCause());
+            return failure(failed, e.getCause().toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return failure(failed, "interrupted");
+        }
+    }
+
+    // Gọi khi không có kết quả từ DB và bộ nhớ cũng không biết token có bị thu hồi hay không
+    // true → chấp nhận token (fail-open), false → từ chối (fail-closed)
+    public boolean failOpen() {
+        if (circuitBreaker.failingFor().compareTo(failOpenFor) < 0) {
+            allowed.increment();
+            return true;
+        }
+        denied.increment();
+        return false;
+    }
+
+    public CircuitBreaker.State circuitState() {
+        return circuitBreaker.state();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> Optional<T> failure(Counter counter, String reason) {
+        counter.increment();
+        boolean wasOpen = circuitBreaker.state() == CircuitBreaker.State.OPEN;
+        circuitBreaker.onFailure();
+        if (!wasOpen && circuitBreaker.state() == CircuitBreaker.State.OPEN)
+            log.warn("Revocation lookup {}, circuit opened after failing for {} ms",
+                    reason, circuitBreaker.failingFor().toMillis());
+        return Optional.empty();
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("token.revocation.lookup")
+                .tag("outcome", outcome)
+                .description("Revocation lookups, by outcome")
+                .register(meterRegistry);
+    }
+
+    private static Counter decision(MeterRegistry meterRegistry, String decision) {
+        return Counter.builder("token.revocation.fallback")
+                .tag("decision", decision)
+                .description("Tokens accepted or rejected without a revocation lookup")
+                .register(meterRegistry);
+    }
+}
@@ -2,6 +2,7 @@ package com.ka.identity_service.service;
 
 import com.ka.identity_service.dto.request.RoleRequest;
 import com.ka.identity_service.dto.response.RoleResponse;
+import com.ka.identity_service.enums.VersionedCollection;
 import com.ka.identity_service.mapper.RoleMapper;
 import com.ka.identity_service.repository.PermissionRepository;
 import com.ka.identity_service.repository.RoleRepository;
@@ -10,6 +11,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashSet;
 import java.util.List;
@@ -22,16 +24,36 @@ public class RoleService {
     RoleRepository roleRepository;
     PermissionRepository permissionRepository;
     RoleMapper roleMapper;
+    UserResponseCache userResponseCache;
+    CollectionVersions collectionVersions;
+
+    @Transactional
     public RoleResponse create(RoleRequest request){
         var role = roleMapper.toRole(request);
+        // Ghi đè role đã có: giữ version hiện tại, nếu không save() coi là role mới (version null) và insert trùng khóa
+        var version = roleRepository.findVersion(role.getName());
+        version.ifPresent(role::setVersion);
 
         var permissions = permissionRepository.findAllById(request.getPermissions());
         role.setPermissions(new HashSet<>(permissions));
 
         role = roleRepository.save(role);
+        // Ghi đè role đã có → user đang có role này phải load lại
+        userResponseCache.evictByRole(role.getName());
+        // Role mới chưa được gán cho user nào, chỉ role đã có mới làm đổi UserResponse
+        if (version.isPresent())
+            collectionVersions.bump(VersionedCollection.ROLES, VersionedCollection.USERS);
+        else
+            collectionVersions.bump(VersionedCollection.ROLES);
         return roleMapper.toRoleResponse(role);
     }
 
+    // ETag của GET /roles, không đọc bảng role
+    public String getAllEtag(){
+        return collectionVersions.etag(VersionedCollection.ROLES);
+    }
+
+    @Transactional(readOnly = true)
     public List<RoleResponse> getAll(){
         return roleRepository.findAll()
                 .stream()
@@ -41,5 +63,7 @@ public class RoleService {
 
     public void delete(String role){
         roleRepository.deleteById(role);
+        userResponseCache.evictByRole(role);
+        collectionVersions.bump(VersionedCollection.ROLES, VersionedCollection.USERS);
     }
 }
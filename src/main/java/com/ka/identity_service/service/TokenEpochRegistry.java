@@ -0,0 +1,164 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.repository.RefreshTokenRepository;
+import com.ka.identity_service.repository.UserRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Lưu "token epoch" của từng user trong bộ nhớ, nguồn gốc là cột user.tokens_valid_after
+ * - Epoch là bộ đếm chỉ tăng của từng user, được ghi vào token lúc phát hành (claim "tep")
+ * - Token có tep < epoch của user → bị từ chối; so sánh bộ đếm nên token phát hành
+ *   ngay trong cùng giây với lúc thu hồi cũng bị từ chối, không phụ thuộc đồng hồ của từng instance
+ * - Mỗi lần thu hồi epoch tăng thành max(epoch + 1, thời điểm hiện tại tính bằng giây):
+ *   token cũ chưa có claim tep vẫn được so theo iat < epoch như trước
+ * - Logout mọi thiết bị / đổi mật khẩu / xóa user chỉ cần update 1 dòng,
+ *   không phải thêm từng jti vào bảng invalidated_token
+ * - Entry hết hạn sau jwt.token-epoch-cache-ttl giây để instance khác cũng thấy thay đổi
+ * - Cùng entry giữ luôn profileVersion (user.profile_version) để kiểm tra claim profile
+ * - Gọi trong transaction: DB được update trong transaction, cache chỉ được ghi sau khi commit
+ *   (rollback thì bỏ entry, lần sau load lại từ DB)
+ * - Load lại qua RevocationLookup: DB lỗi / chậm thì dùng entry cũ (nếu có) trong thời gian fail-open,
+ *   sau đó token của user bị từ chối cho tới khi DB trả lời lại
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TokenEpochRegistry {
+
+    // Claim chứa token epoch của user lúc phát hành token
+    public static final String TOKEN_EPOCH_CLAIM = "tep";
+
+    // User không tồn tại (đã xóa) → mọi token đều bị từ chối
+    static long DELETED = Long.MAX_VALUE;
+
+    UserRepository userRepository;
+    RefreshTokenRepository refreshTokenRepository;
+    RevocationLookup revocationLookup;
+
+    Map<String, Entry> epochs = new ConcurrentHashMap<>();
+
+    @NonFinal
+    @Value("${jwt.token-epoch-cache-ttl:60}")
+    protected long CACHE_TTL;
+
+    @NonFinal
+    @Value("${jwt.token-epoch-cache-size:100000}")
+    protected int CACHE_SIZE;
+
+    record Entry(long epoch, long profileVersion, long loadedAt) {
+    }
+
+    // true nếu token của user được phát hành trước epoch hiện tại
+    // tokenEpoch: claim tep; null với token phát hành trước khi có claim này,
+    // khi đó so theo issueTime (iat tính bằng giây)
+    public boolean isRevoked(String username, Long issueTime, Long tokenEpoch) {
+        if (username == null || (tokenEpoch == null && issueTime == null))
+            return true;
+        long epoch = entryOf(username).epoch();
+        return tokenEpoch != null ? tokenEpoch < epoch : issueTime < epoch;
+    }
+
+    // Phiên bản profile hiện tại của user (0 nếu chưa đổi lần nào)
+    public long profileVersion(String username) {
+        return entryOf(username).profileVersion();
+    }
+
+    // Profile vừa được cập nhật ở instance này
+    public void profileChanged(String username, long profileVersion) {
+        afterCommit(username, () -> {
+            Entry entry = epochs.get(username);
+            if (entry != null)
+                epochs.put(username, new Entry(entry.epoch(), profileVersion, Instant.now().getEpochSecond()));
+        });
+    }
+
+    // Thu hồi mọi access token và refresh token hiện có của user
+    // Epoch được tăng ngay trong câu UPDATE nên hai lần thu hồi đồng thời không ghi đè nhau
+    public void revokeAll(String username) {
+        long now = Instant.now().getEpochSecond();
+        userRepository.advanceTokensValidAfter(username, now);
+        refreshTokenRepository.revokeAllByUsername(username);
+        var state = userRepository.findTokenState(username);
+        afterCommit(username, () -> state.ifPresentOrElse(
+                value -> epochs.put(username, new Entry(value.tokensValidAfter(), value.profileVersion(), now)),
+                () -> epochs.remove(username)));
+    }
+
+    // User bị xóa: không cần update DB, user không còn trong DB thì lần load sau cũng ra DELETED
+    public void markDeleted(String username) {
+        refreshTokenRepository.revokeAllByUsername(username);
+        epochs.put(username, new Entry(DELETED, DELETED, Instant.now().getEpochSecond()));
+    }
+
+    // User vừa được tạo (có thể trùng username với user đã xóa): bỏ entry DELETED còn trong cache
+    // Instance khác vẫn giữ entry cũ tối đa jwt.token-epoch-cache-ttl giây
+    public void userCreated(String username) {
+        epochs.remove(username);
+    }
+
+    // Chỉ dùng cho user giả lập của WarmUpService: token của user này được coi là hợp lệ
+    // mà không cần dòng nào trong bảng user
+    void pin(String username) {
+        epochs.put(username, new Entry(0, 0, Long.MAX_VALUE / 2));
+    }
+
+    void forget(String username) {
+        epochs.remove(username);
+    }
+
+    // Ghi cache sau khi transaction hiện tại commit, không có transaction thì ghi ngay
+    // Rollback → xóa entry, lần kiểm tra sau load lại từ DB
+    private void afterCommit(String username, Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED)
+                    epochs.remove(username);
+            }
+        });
+    }
+
+    private Entry entryOf(String username) {
+        long now = Instant.now().getEpochSecond();
+        Entry entry = epochs.get(username);
+        if (entry != null && now - entry.loadedAt() < CACHE_TTL)
+            return entry;
+
+        Optional<Entry> loaded = revocationLookup.query(() -> userRepository.findTokenState(username)
+                .map(state -> new Entry(state.tokensValidAfter(), state.profileVersion(), now))
+                .orElse(new Entry(DELETED, DELETED, now)));
+        if (loaded.isEmpty()) {
+            // Không ghi vào cache: lần sau thử load lại
+            if (!revocationLookup.failOpen())
+                return new Entry(DELETED, DELETED, now);
+            return entry != null ? entry : new Entry(0, 0, now);
+        }
+
+        entry = loaded.get();
+        if (epochs.size() >= CACHE_SIZE)
+            epochs.clear();
+        epochs.put(username, entry);
+        return entry;
+    }
+}
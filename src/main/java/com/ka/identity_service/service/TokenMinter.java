@@ -0,0 +1,329 @@
+package com.ka.identity_service.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Tạo access token HS512 cho đúng cấu trúc claim của service (sub, iss, iat, exp, tep, jti, scope, perms, profile)
+ * thay cho JWTClaimsSet → JSON map → Payload → JWSObject → MACSigner của Nimbus
+ * - Header {"alg":"HS512"} được encode sẵn một lần
+ * - Claim được ghi thẳng thành JSON UTF-8 vào buffer dùng lại của từng thread, rồi base64url ngay trong buffer
+ * - Mac được khởi tạo với key một lần cho mỗi thread (ThreadLocal), ký trực tiếp trên buffer
+ * - jti là UUID v4 lấy từ ThreadLocalRandom, không tranh chấp lock như SecureRandom của UUID.randomUUID()
+ *   (jti chỉ là định danh để thu hồi, không phải bí mật)
+ * Token tạo ra verify / parse bình thường bằng Nimbus (SignedJWT, MACVerifier, NimbusJwtDecoder)
+ */
+@Component
+public class TokenMinter {
+
+    public static final String ISSUER = "kaakaa.com";
+
+    static String ALGORITHM = "HmacSHA512";
+    static byte[] BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+    static byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    static byte[] HEADER = base64Url("{\"alg\":\"HS512\"}".getBytes(StandardCharsets.US_ASCII));
+    static byte[] ISSUER_JSON = ("\"" + ISSUER + "\"").getBytes(StandardCharsets.US_ASCII);
+
+    // Buffer lớn hơn mức này (scope / profile bất thường) không được giữ lại cho lần sau
+    static int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<State> states;
+
+    public TokenMinter(@Value("${jwt.signerKey}") String signerKey) {
+        // Cùng key bytes với MACSigner(SIGNER_KEY.getBytes()) / MACVerifier
+        this.key = new SecretKeySpec(signerKey.getBytes(), ALGORITHM);
+        this.states = ThreadLocal.withInitial(() -> new State(newMac()));
+    }
+
+    // tokenEpoch / perms / profile null → không có claim đó
+    public String mint(String subject, long issueTime, long expirationTime, Long tokenEpoch, String scope,
+                       String perms, Map<String, Object> profile) {
+        State state = states.get();
+        Buffer json = state.json;
+        Buffer out = state.out;
+        json.length = 0;
+        out.length = 0;
+
+        json.ascii("{\"sub\":").string(subject)
+                .ascii(",\"iss\":").bytes(ISSUER_JSON)
+                .ascii(",\"iat\":").number(issueTime)
+                .ascii(",\"exp\":").number(expirationTime);
+        if (tokenEpoch != null)
+            json.ascii(",\"tep\":").number(tokenEpoch);
+        json.ascii(",\"jti\":").jwtId()
+                .ascii(",\"scope\":").string(scope);
+        if (perms != null)
+            json.ascii(",\"perms\":").string(perms);
+        if (profile != null) {
+            json.ascii(",\"profile\":");
+            object(json, profile);
+        }
+        json.put('}');
+
+        // header.payload
+        out.bytes(HEADER).put('.');
+        base64Url(json.bytes, json.length, out);
+
+        // .signature, ký trên đúng các byte ASCII của header.payload
+        Mac mac = state.mac;
+        mac.update(out.bytes, 0, out.length);
+        try {
+            mac.doFinal(state.signature, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        out.put('.');
+        base64Url(state.signature, state.signature.length, out);
+
+        String token = new String(out.bytes, 0, out.length, StandardCharsets.ISO_8859_1);
+        state.trim();
+        return token;
+    }
+
+    // UUID v4 ngẫu nhiên (dạng 8-4-4-4-12)
+    public static String newJwtId() {
+        Buffer buffer = new Buffer(36);
+        buffer.uuid();
+        return new String(buffer.bytes, 0, buffer.length, StandardCharsets.ISO_8859_1);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can not initialize " + ALGORITHM, e);
+        }
+    }
+
+    private static void object(Buffer json, Map<String, Object> values) {
+        json.put('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() == null)
+                continue;
+            if (!first)
+                json.put(',');
+            first = false;
+            json.string(entry.getKey()).put(':');
+            Object value = entry.getValue();
+            if (value instanceof String string)
+                json.string(string);
+            else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+                json.number(((Number) value).longValue());
+            else if (value instanceof Boolean bool)
+                json.ascii(bool ? "true" : "false");
+            else
+                throw new IllegalArgumentException("Unsupported claim value type: " + value.getClass());
+        }
+        json.put('}');
+    }
+
+    private static void base64Url(byte[] src, int length, Buffer out) {
+        out.ensure((length + 2) / 3 * 4);
+        byte[] dst = out.bytes;
+        int d = out.length;
+        int i = 0;
+        for (int end = length - length % 3; i < end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[d++] = BASE64_URL[bits >>> 18 & 0x3f];
+            dst[d++] = BASE64_URL[bits >>> 12 & 0x3f];
+            dst[d++] = BASE64_URL[bits >>> 6 & 0x3f];
+            dst[d++] = BASE64_URL[bits & 0x3f];
+        }
+        // Không padding
+        int remaining = length - i;
+        if (remaining == 1) {
+            int bits = (src[i] & 0xff) << 16;
+            dst[d++] = BASE64_URL[bits >>> 18 & 0x3f];
+            dst[d++] = BASE64_URL[bits >>> 12 & 0x3f];
+        } else if (remaining == 2) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8;
+            dst[d++] = BASE64_URL[bits >>> 18 & 0x3f];
+            dst[d++] = BASE64_URL[bits >>> 12 & 0x3f];
+            dst[d++] = BASE64_URL[bits >>> 6 & 0x3f];
+        }
+        out.length = d;
+    }
+
+    private static byte[] base64Url(byte[] src) {
+        Buffer out = new Buffer(src.length * 2);
+        base64Url(src, src.length, out);
+        return Arrays.copyOf(out.bytes, out.length);
+    }
+
+    // Trạng thái dùng lại của một thread
+    private static class State {
+        final Mac mac;
+        final Buffer json = new Buffer(512);
+        final Buffer out = new Buffer(1024);
+        final byte[] signature;
+
+        State(Mac mac) {
+            this.mac = mac;
+            this.signature = new byte[mac.getMacLength()];
+        }
+
+        void trim() {
+            json.trim();
+            out.trim();
+        }
+    }
+
+    // byte[] tự mở rộng, ghi JSON UTF-8
+    private static class Buffer {
+        final int initialCapacity;
+        byte[] bytes;
+        int length;
+
+        Buffer(int capacity) {
+            this.initialCapacity = capacity;
+            this.bytes = new byte[capacity];
+        }
+
+        void ensure(int extra) {
+            if (length + extra > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+
+        void trim() {
+            if (bytes.length > MAX_RETAINED_BUFFER)
+                bytes = new byte[initialCapacity];
+        }
+
+        Buffer put(char c) {
+            ensure(1);
+            bytes[length++] = (byte) c;
+            return this;
+        }
+
+        Buffer bytes(byte[] src) {
+            ensure(src.length);
+            System.arraycopy(src, 0, bytes, length, src.length);
+            length += src.length;
+            return this;
+        }
+
+        // Chuỗi hằng chỉ gồm ký tự ASCII, không cần escape
+        Buffer ascii(String value) {
+            int n = value.length();
+            ensure(n);
+            for (int i = 0; i < n; i++)
+                bytes[length++] = (byte) value.charAt(i);
+            return this;
+        }
+
+        Buffer number(long value) {
+            if (value == Long.MIN_VALUE)
+                return ascii(Long.toString(value));
+            ensure(20);
+            if (value < 0) {
+                bytes[length++] = '-';
+                value = -value;
+            }
+            int start = length;
+            do {
+                bytes[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            // Đảo lại thứ tự chữ số
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte tmp = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = tmp;
+            }
+            return this;
+        }
+
+        // Chuỗi JSON (có escape) encode UTF-8, null → null
+        Buffer string(String value) {
+            if (value == null)
+                return ascii("null");
+            int n = value.length();
+            // Tối đa 6 byte cho mỗi ký tự (\\u00XX), + 2 dấu nháy
+            ensure(n * 6 + 2);
+            byte[] b = bytes;
+            int d = length;
+            b[d++] = '"';
+            for (int i = 0; i < n; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    if (c == '"' || c == '\\') {
+                        b[d++] = '\\';
+                        b[d++] = (byte) c;
+                    } else if (c < 0x20) {
+                        b[d++] = '\\';
+                        b[d++] = 'u';
+                        b[d++] = '0';
+                        b[d++] = '0';
+                        b[d++] = HEX[c >> 4];
+                        b[d++] = HEX[c & 0xf];
+                    } else {
+                        b[d++] = (byte) c;
+                    }
+                } else if (c < 0x800) {
+                    b[d++] = (byte) (0xc0 | c >> 6);
+                    b[d++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    b[d++] = (byte) (0xf0 | cp >> 18);
+                    b[d++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                    b[d++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                    b[d++] = (byte) (0x80 | cp & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    // Surrogate lẻ → '?' giống String.getBytes(UTF_8)
+                    b[d++] = '?';
+                } else {
+                    b[d++] = (byte) (0xe0 | c >> 12);
+                    b[d++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    b[d++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+            b[d++] = '"';
+            length = d;
+            return this;
+        }
+
+        Buffer jwtId() {
+            ensure(38);
+            bytes[length++] = '"';
+            uuid();
+            bytes[length++] = '"';
+            return this;
+        }
+
+        // UUID v4: version 4, variant 10xx
+        void uuid() {
+            ensure(36);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long msb = random.nextLong() & ~0xf000L | 0x4000L;
+            long lsb = random.nextLong() & 0x3fffffffffffffffL | 0x8000000000000000L;
+            hex(msb >>> 32, 8);
+            bytes[length++] = '-';
+            hex(msb >>> 16, 4);
+            bytes[length++] = '-';
+            hex(msb, 4);
+            bytes[length++] = '-';
+            hex(lsb >>> 48, 4);
+            bytes[length++] = '-';
+            hex(lsb, 12);
+        }
+
+        private void hex(long value, int digits) {
+            for (int i = digits - 1; i >= 0; i--)
+                bytes[length++] = HEX[(int) (value >>> (i * 4)) & 0xf];
+        }
+    }
+}
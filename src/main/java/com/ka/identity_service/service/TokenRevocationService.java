@@ -0,0 +1,245 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.InvalidatedToken;
+import com.ka.identity_service.repository.InvalidatedTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Quản lý blacklist token (jti) theo kiểu write-behind
+ * - revoke(): ghi vào view trong bộ nhớ ngay lập tức rồi đưa vào hàng đợi,
+ *   request logout không phải chờ INSERT vào DB
+ * - Hàng đợi được flush xuống DB theo batch khi đủ jwt.revocation.batch-size phần tử
+ *   hoặc sau mỗi jwt.revocation.flush-interval-ms
+ * - Batch lỗi thì ghi lại từng dòng: jti đã có trong DB được bỏ qua, không chặn cả batch
+ * - Khi tắt ứng dụng (graceful shutdown) hàng đợi được flush hết
+ * - View trong bộ nhớ được dọn jti đã hết hạn theo lịch riêng (jwt.revocation.purge-interval-ms)
+ * - isRevoked(): kiểm tra view trong bộ nhớ trước, sau đó mới tới DB (qua RevocationLookup: timeout + circuit breaker)
+ * - jti mà DB trả lời là đã thu hồi cũng được giữ trong view (thu hồi không bao giờ bị đảo ngược),
+ *   khi DB sập các token này vẫn bị từ chối; jti chưa biết thì theo chính sách fail-open / fail-closed
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TokenRevocationService {
+
+    InvalidatedTokenRepository invalidatedTokenRepository;
+    TransactionTemplate transactionTemplate;
+    RevocationLookup revocationLookup;
+
+    // jti → thời điểm hết hạn, giữ tới khi token hết hạn
+    Map<String, Date> revoked = new ConcurrentHashMap<>();
+    BlockingQueue<InvalidatedToken> queue;
+    int batchSize;
+    // Token được cấp sau thời điểm này là hết hạn, dùng làm hạn giữ cho jti đọc được từ DB
+    long validDuration;
+
+    // Flush khi hàng đợi đầy batch, chạy ngoài request thread
+    ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "revocation-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    ReentrantLock flushLock = new ReentrantLock();
+
+    Counter flushedCounter;
+    Counter failedCounter;
+
+    public TokenRevocationService(InvalidatedTokenRepository invalidatedTokenRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  RevocationLookup revocationLookup,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${jwt.revocation.batch-size:100}") int batchSize,
+                                  @Value("${jwt.revocation.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${jwt.valid-duration}") long validDuration) {
+        this.invalidatedTokenRepository = invalidatedTokenRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.revocationLookup = revocationLookup;
+        this.batchSize = batchSize;
+        this.validDuration = validDuration;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("token.revocation.queue.depth", queue, Collection::size)
+                .description("Revocations waiting to be written to the database")
+                .register(meterRegistry);
+        Gauge.builder("token.revocation.view.size", revoked, Map::size)
+                .description("Revoked token ids held in memory")
+                .register(meterRegistry);
+        this.flushedCounter = Counter.builder("token.revocation.flushed")
+                .description("Revocations written to the database")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("token.revocation.flush.failures")
+                .description("Failed revocation batch writes")
+                .register(meterRegistry);
+    }
+
+    // Thu hồi token, có hiệu lực ngay trên instance này
+    public void revoke(String jti, Date expiryTime) {
+        if (revoked.putIfAbsent(jti, expiryTime) != null)
+            return;
+
+        InvalidatedToken invalidatedToken = InvalidatedToken.builder()
+                .id(jti)
+                .expiryTime(expiryTime)
+                .build();
+
+        if (!queue.offer(invalidatedToken)) {
+            // Hàng đợi đầy (DB chậm/sập quá lâu) → ghi đồng bộ
+            log.warn("Revocation queue is full, writing {} synchronously", jti);
+            invalidatedTokenRepository.save(invalidatedToken);
+            return;
+        }
+        if (queue.size() >= batchSize)
+            flushExecutor.execute(this::flush);
+    }
+
+    // Đọc từ replica được: revoke trên instance này đã có trong view bộ nhớ,
+    // instance khác chỉ trễ thêm một khoảng bằng độ trễ replication
+    public boolean isRevoked(String jti) {
+        if (revoked.containsKey(jti))
+            return true;
+        Optional<Boolean> found = revocationLookup.query(() -> invalidatedTokenRepository.existsById(jti));
+        if (found.isEmpty())
+            return !revocationLookup.failOpen();
+        if (found.get())
+            remember(List.of(jti));
+        return found.get();
+    }
+
+    // Trả về các jti đã bị thu hồi trong danh sách, tối đa 1 query IN (...)
+    public Set<String> revokedAmong(Collection<String> jtis) {
+        Set<String> result = new HashSet<>();
+        List<String> unknown = new ArrayList<>(jtis.size());
+        for (String jti : jtis) {
+            if (revoked.containsKey(jti))
+                result.add(jti);
+            else
+                unknown.add(jti);
+        }
+        if (unknown.isEmpty())
+            return result;
+
+        Optional<Set<String>> found = revocationLookup.query(() -> invalidatedTokenRepository.findExistingIds(unknown));
+        if (found.isPresent()) {
+            remember(found.get());
+            result.addAll(found.get());
+        } else if (!revocationLookup.failOpen()) {
+            result.addAll(unknown);
+        }
+        return result;
+    }
+
+    // Số revocation đang chờ ghi xuống DB
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.flush-interval-ms:200}")
+    public void flush() {
+        if (queue.isEmpty() || !flushLock.tryLock())
+            return;
+        try {
+            List<InvalidatedToken> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                if (!writeBatch(batch))
+                    return;
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Graceful shutdown: ghi hết hàng đợi trước khi EntityManagerFactory bị đóng
+    @PreDestroy
+    public void drain() {
+        flushExecutor.shutdown();
+        flushLock.lock();
+        try {
+            List<InvalidatedToken> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                if (!writeBatch(batch)) {
+                    log.error("Could not persist {} pending revocations on shutdown", queue.size() + batch.size());
+                    return;
+                }
+                batch.clear();
+            }
+            log.info("Revocation queue drained");
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Một transaction, nhiều INSERT được Hibernate gom batch (hibernate.jdbc.batch_size)
+    private boolean writeBatch(List<InvalidatedToken> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> invalidatedTokenRepository.saveAll(batch));
+            flushedCounter.increment(batch.size());
+            return true;
+        } catch (RuntimeException e) {
+            // Cả batch bị rollback, có thể chỉ vì một jti đã có trong DB → ghi lại từng dòng
+            log.warn("Failed to flush {} revocations as a batch, retrying one by one", batch.size(), e);
+            return writeEach(batch);
+        }
+    }
+
+    // Mỗi dòng một transaction; dừng ở dòng đầu tiên lỗi không phải do ràng buộc dữ liệu (DB chậm / sập)
+    private boolean writeEach(List<InvalidatedToken> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            InvalidatedToken token = batch.get(i);
+            token.setNew(true);
+            try {
+                transactionTemplate.executeWithoutResult(status -> invalidatedTokenRepository.saveAndFlush(token));
+                flushedCounter.increment();
+            } catch (DataIntegrityViolationException e) {
+                // jti đã được ghi (revoke trùng ở instance khác) hoặc dòng không hợp lệ:
+                // ghi lại bao nhiêu lần cũng không được nên bỏ qua, view trong bộ nhớ vẫn giữ
+                log.warn("Skipping revocation {} that can not be inserted: {}", token.getId(), e.getMessage());
+            } catch (RuntimeException e) {
+                failedCounter.increment();
+                log.error("Failed to flush {} revocations, will retry", batch.size() - i, e);
+                requeue(batch.subList(i, batch.size()));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Đưa lại vào hàng đợi, view trong bộ nhớ vẫn giữ nên token vẫn bị từ chối
+    private void requeue(List<InvalidatedToken> tokens) {
+        tokens.forEach(token -> {
+            token.setNew(true);
+            if (!queue.offer(token))
+                log.error("Dropping revocation {} from queue, it stays revoked in memory only", token.getId());
+        });
+    }
+
+    // Không biết exp thật của token nên giữ tới khi token cấp muộn nhất có thể cũng đã hết hạn
+    private void remember(Collection<String> jtis) {
+        if (jtis.isEmpty())
+            return;
+        Date expiryTime = new Date(System.currentTimeMillis() + validDuration * 1000);
+        jtis.forEach(jti -> revoked.putIfAbsent(jti, expiryTime));
+    }
+
+    // Chạy độc lập với flush(): flush bỏ qua khi hàng đợi rỗng
+    @Scheduled(fixedDelayString = "${jwt.revocation.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        Date now = new Date();
+        revoked.values().removeIf(expiryTime -> expiryTime == null || expiryTime.before(now));
+    }
+}
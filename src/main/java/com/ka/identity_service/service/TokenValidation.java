@@ -0,0 +1,32 @@
+package com.ka.identity_service.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Verdict + claims (chỉ có khi verdict là VALID)
+// Kết quả không hợp lệ dùng chung một instance cho mỗi verdict, không cấp phát thêm
+public record TokenValidation(TokenVerdict verdict, VerifiedToken claims) {
+
+    private static final Map<TokenVerdict, TokenValidation> INVALID = new EnumMap<>(TokenVerdict.class);
+
+    static {
+        for (TokenVerdict verdict : TokenVerdict.values()) {
+            if (verdict != TokenVerdict.VALID)
+                INVALID.put(verdict, new TokenValidation(verdict, null));
+        }
+    }
+
+    public static TokenValidation valid(VerifiedToken claims) {
+        return new TokenValidation(TokenVerdict.VALID, claims);
+    }
+
+    public static TokenValidation invalid(TokenVerdict verdict) {
+        if (verdict == TokenVerdict.VALID)
+            throw new IllegalArgumentException("VALID requires claims");
+        return INVALID.get(verdict);
+    }
+
+    public boolean isValid() {
+        return verdict == TokenVerdict.VALID;
+    }
+}
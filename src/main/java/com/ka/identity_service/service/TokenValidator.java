@@ -0,0 +1,75 @@
+package com.ka.identity_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+ * Kiểm tra access token và trả về verdict thay vì throw exception
+ * - Chữ ký / format: FastTokenVerifier (BAD_SIGNATURE, MALFORMED)
+ * - Hạn: EXPIRED
+ * - Thu hồi: token epoch của user, sau đó tới blacklist jti (REVOKED)
+ * Token không hợp lệ không tạo exception (không tốn chi phí capture stack trace),
+ * đường đi của token sai gần như rẻ bằng token đúng
+ * Số lượng theo verdict: /actuator/metrics/token.validation?tag=verdict:EXPIRED
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TokenValidator {
+
+    FastTokenVerifier fastTokenVerifier;
+    TokenEpochRegistry tokenEpochRegistry;
+    TokenRevocationService tokenRevocationService;
+    Map<TokenVerdict, Counter> counters = new EnumMap<>(TokenVerdict.class);
+
+    public TokenValidator(FastTokenVerifier fastTokenVerifier,
+                          TokenEpochRegistry tokenEpochRegistry,
+                          TokenRevocationService tokenRevocationService,
+                          MeterRegistry meterRegistry) {
+        this.fastTokenVerifier = fastTokenVerifier;
+        this.tokenEpochRegistry = tokenEpochRegistry;
+        this.tokenRevocationService = tokenRevocationService;
+        for (TokenVerdict verdict : TokenVerdict.values()) {
+            counters.put(verdict, Counter.builder("token.validation")
+                    .tag("verdict", verdict.name())
+                    .description("Access token validations, by verdict")
+                    .register(meterRegistry));
+        }
+    }
+
+    // Kiểm tra đầy đủ: chữ ký, hạn, thu hồi
+    public TokenValidation validate(String token) {
+        TokenValidation validation = verifySignature(token);
+        if (validation.isValid() && isRevoked(validation.claims()))
+            validation = TokenValidation.invalid(TokenVerdict.REVOKED);
+        return record(validation);
+    }
+
+    // Phần không cần DB: chữ ký + hạn (chưa được đếm, caller gọi record sau khi có kết quả cuối cùng)
+    // Batch introspect chạy phần này song song rồi check blacklist 1 lần
+    public TokenValidation verifySignature(String token) {
+        TokenValidation validation = fastTokenVerifier.verify(token);
+        if (validation.isValid() && validation.claims().isExpired(System.currentTimeMillis()))
+            return TokenValidation.invalid(TokenVerdict.EXPIRED);
+        return validation;
+    }
+
+    // Token phát hành trước lần "logout mọi thiết bị" / đổi mật khẩu / xóa user
+    public boolean isRevokedByEpoch(VerifiedToken claims) {
+        return tokenEpochRegistry.isRevoked(claims.subject(), claims.issueTime(), claims.tokenEpoch());
+    }
+
+    public TokenValidation record(TokenValidation validation) {
+        counters.get(validation.verdict()).increment();
+        return validation;
+    }
+
+    private boolean isRevoked(VerifiedToken claims) {
+        return isRevokedByEpoch(claims) || tokenRevocationService.isRevoked(claims.jwtId());
+    }
+}
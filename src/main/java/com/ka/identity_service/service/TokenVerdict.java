@@ -0,0 +1,11 @@
+package com.ka.identity_service.service;
+
+// Kết quả kiểm tra access token
+// - VALID: chữ ký đúng, còn hạn, chưa bị thu hồi
+// - EXPIRED: chữ ký đúng nhưng đã hết hạn (hoặc không có exp)
+// - BAD_SIGNATURE: chữ ký sai (token bị sửa, ký bằng key khác, thuật toán không hỗ trợ)
+// - MALFORMED: không phải JWS / không đọc được header, payload
+// - REVOKED: đã logout (jti trong blacklist) hoặc phát hành trước token epoch của user
+public enum TokenVerdict {
+    VALID, EXPIRED, BAD_SIGNATURE, MALFORMED, REVOKED
+}
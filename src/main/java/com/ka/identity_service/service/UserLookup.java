@@ -0,0 +1,56 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.User;
+import com.ka.identity_service.repository.UserRepository;
+import com.ka.identity_service.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/*
+ * Tìm user (kèm roles + permissions) theo username, gộp các lời gọi đồng thời
+ * - Nhiều thread cùng tìm một username (đăng nhập dồn dập, refresh song song) → một query
+ * - Không cache: kết quả bị bỏ ngay khi query xong, lần gọi sau lại đọc DB
+ * - Chờ tối đa jwt.user-lookup-max-wait, quá thời gian thì tự query
+ * - So sánh user.lookup.requests và user.lookup.queries để thấy số query tiết kiệm được
+ *
+ * User trả về có thể dùng chung giữa nhiều thread nên chỉ được đọc, không sửa / save
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserLookup {
+
+    UserRepository userRepository;
+    SingleFlight<String, Optional<User>> lookups = new SingleFlight<>();
+    Duration maxWait;
+
+    Counter requests;
+    Counter queries;
+
+    public UserLookup(UserRepository userRepository,
+                      MeterRegistry meterRegistry,
+                      @Value("${jwt.user-lookup-max-wait:2s}") Duration maxWait) {
+        this.userRepository = userRepository;
+        this.maxWait = maxWait;
+        this.requests = Counter.builder("user.lookup.requests")
+                .description("User lookups by username")
+                .register(meterRegistry);
+        this.queries = Counter.builder("user.lookup.queries")
+                .description("User lookups that reached the database")
+                .register(meterRegistry);
+    }
+
+    public Optional<User> findWithAuthoritiesByUsername(String username) {
+        requests.increment();
+        return lookups.execute(username, () -> {
+            queries.increment();
+            return userRepository.findWithAuthoritiesByUsername(username);
+        }, maxWait);
+    }
+}
@@ -0,0 +1,258 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.dto.response.RoleResponse;
+import com.ka.identity_service.dto.response.UserResponse;
+import com.ka.identity_service.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*
+ * Cache UserResponse trong bộ nhớ cho getMyInfo / getUser
+ * - Một entry được đánh key theo cả username lẫn id
+ * - Giới hạn theo số entry (app.user-cache.size) và thời gian sống (app.user-cache.ttl),
+ *   TTL cũng là độ trễ tối đa để thay đổi ở instance khác được thấy
+ * - Bị xóa khi update / delete user, khi role hoặc permission mà user đang có thay đổi
+ * - Entry giữ version (@Version) của user lúc load: ETag của GET /users/{id} đọc version từ DB,
+ *   entry mang version khác (user được update ở instance khác, chưa hết TTL) bị bỏ để body khớp với ETag
+ * - Nhiều request cùng miss một key → chỉ một lần load DB (SingleFlight)
+ * - Cache thêm RoleResponse theo tên role (getMyInfo từ claim profile chỉ biết tên role),
+ *   cùng TTL và bị xóa cùng lúc với user khi role / permission thay đổi
+ * - Thống kê hit / miss / eviction qua Micrometer (/actuator/metrics/user.cache.*)
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserResponseCache {
+
+    Map<String, Entry> byUsername = new ConcurrentHashMap<>();
+    Map<String, Entry> byId = new ConcurrentHashMap<>();
+    Map<String, RoleEntry> rolesByName = new ConcurrentHashMap<>();
+    SingleFlight<String, Versioned> loads = new SingleFlight<>();
+
+    long ttlNanos;
+    int maxSize;
+
+    // Tăng mỗi lần invalidate, kết quả load bắt đầu trước đó không được đưa vào cache
+    AtomicLong generation = new AtomicLong();
+
+    Counter hits;
+    Counter misses;
+    Counter evictions;
+
+    record Entry(UserResponse response, Long version, long loadedAt) {
+    }
+
+    // Kết quả load: response cùng version của user đọc trong cùng transaction
+    public record Versioned(UserResponse response, Long version) {
+    }
+
+    record RoleEntry(RoleResponse response, long loadedAt) {
+    }
+
+    public UserResponseCache(MeterRegistry meterRegistry,
+                             @Value("${app.user-cache.ttl:60s}") Duration ttl,
+                             @Value("${app.user-cache.size:10000}") int maxSize) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+
+        Gauge.builder("user.cache.size", byUsername, Map::size)
+                .description("Users held in the response cache")
+                .register(meterRegistry);
+        this.hits = Counter.builder("user.cache.requests").tag("result", "hit")
+                .description("User response cache lookups")
+                .register(meterRegistry);
+        this.misses = Counter.builder("user.cache.requests").tag("result", "miss")
+                .description("User response cache lookups")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("user.cache.evictions")
+                .description("User response cache entries removed by invalidation")
+                .register(meterRegistry);
+    }
+
+    public UserResponse getByUsername(String username, Supplier<Versioned> loader) {
+        return get(byUsername, "u:", username, loader);
+    }
+
+    public UserResponse getById(String id, Supplier<Versioned> loader) {
+        return get(byId, "i:", id, loader);
+    }
+
+    // version: version hiện tại của user trong DB, entry load từ version khác bị xóa
+    public void evictIfStale(String id, Long version) {
+        Entry entry = byId.get(id);
+        if (entry != null && !Objects.equals(entry.version(), version))
+            remove(entry);
+    }
+
+    // Chỉ đọc cache, không load DB khi miss (null)
+    // Dùng cho request chỉ cần một phần field: miss thì caller tự query ít cột hơn và không đưa vào cache
+    public UserResponse peekById(String id) {
+        Entry entry = byId.get(id);
+        if (entry != null && System.nanoTime() - entry.loadedAt() < ttlNanos) {
+            hits.increment();
+            return entry.response();
+        }
+        misses.increment();
+        return null;
+    }
+
+    // Role theo tên, chỉ gọi loader cho các role chưa có trong cache
+    // Trả về null nếu có role không tìm thấy (đã bị xóa)
+    public Set<RoleResponse> getRoles(Collection<String> names,
+                                      Function<Collection<String>, Collection<RoleResponse>> loader) {
+        Set<String> wanted = new LinkedHashSet<>(names);
+        Set<RoleResponse> roles = new LinkedHashSet<>();
+        List<String> missing = new ArrayList<>();
+        for (String name : wanted) {
+            RoleEntry entry = rolesByName.get(name);
+            if (entry != null && System.nanoTime() - entry.loadedAt() < ttlNanos)
+                roles.add(entry.response());
+            else
+                missing.add(name);
+        }
+        if (missing.isEmpty())
+            return roles;
+
+        long startGeneration = generation.get();
+        Collection<RoleResponse> loaded = loader.apply(missing);
+        boolean cacheable = startGeneration == generation.get();
+        for (RoleResponse role : loaded) {
+            if (!wanted.contains(role.getName()))
+                continue;
+            roles.add(role);
+            if (cacheable) {
+                if (rolesByName.size() >= maxSize)
+                    rolesByName.clear();
+                rolesByName.put(role.getName(), new RoleEntry(role, System.nanoTime()));
+            }
+        }
+        return roles.size() == wanted.size() ? roles : null;
+    }
+
+    // User bị update / delete
+    public void evictUser(String id, String username) {
+        evictNowAndAfterCommit(() -> {
+            if (id != null)
+                remove(byId.get(id));
+            if (username != null)
+                remove(byUsername.get(username));
+        });
+    }
+
+    // Role bị sửa / xóa → mọi user đang có role đó
+    public void evictByRole(String roleName) {
+        evictNowAndAfterCommit(() -> {
+            rolesByName.remove(roleName);
+            evictIf(response -> hasRole(response, role -> roleName.equals(role.getName())));
+        });
+    }
+
+    // Permission bị xóa → mọi user có role chứa permission đó
+    public void evictByPermission(String permissionName) {
+        Predicate<RoleResponse> hasPermission = role -> role.getPermissions() != null
+                && role.getPermissions().stream().anyMatch(p -> permissionName.equals(p.getName()));
+        evictNowAndAfterCommit(() -> {
+            rolesByName.values().removeIf(entry -> hasPermission.test(entry.response()));
+            evictIf(response -> hasRole(response, hasPermission));
+        });
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        evictions.increment(byUsername.size());
+        byUsername.clear();
+        byId.clear();
+        rolesByName.clear();
+    }
+
+    public int size() {
+        return byUsername.size();
+    }
+
+    private UserResponse get(Map<String, Entry> cache, String prefix, String key, Supplier<Versioned> loader) {
+        Entry entry = cache.get(key);
+        if (entry != null && System.nanoTime() - entry.loadedAt() < ttlNanos) {
+            hits.increment();
+            return entry.response();
+        }
+        misses.increment();
+        Versioned loaded = loads.execute(prefix + key, () -> {
+            long startGeneration = generation.get();
+            Versioned result = loader.get();
+            if (result != null && result.response() != null && startGeneration == generation.get())
+                put(result.response(), result.version());
+            return result;
+        });
+        return loaded != null ? loaded.response() : null;
+    }
+
+    private void put(UserResponse response, Long version) {
+        if (byUsername.size() >= maxSize) {
+            // Vượt giới hạn → xóa cả cache, đơn giản và không cần theo dõi thứ tự truy cập
+            evictions.increment(byUsername.size());
+            byUsername.clear();
+            byId.clear();
+        }
+        Entry entry = new Entry(response, version, System.nanoTime());
+        byUsername.put(response.getUsername(), entry);
+        byId.put(response.getId(), entry);
+    }
+
+    // Trong transaction: request khác có thể load lại dữ liệu cũ trước khi commit,
+    // nên xóa thêm một lần nữa sau khi commit
+    private void evictNowAndAfterCommit(Runnable eviction) {
+        generation.incrementAndGet();
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    generation.incrementAndGet();
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private void evictIf(Predicate<UserResponse> predicate) {
+        byUsername.values().stream()
+                .filter(entry -> predicate.test(entry.response()))
+                .toList()
+                .forEach(this::remove);
+    }
+
+    private void remove(Entry entry) {
+        if (entry == null)
+            return;
+        UserResponse response = entry.response();
+        boolean removed = byUsername.remove(response.getUsername(), entry);
+        removed |= byId.remove(response.getId(), entry);
+        if (removed)
+            evictions.increment();
+    }
+
+    private static boolean hasRole(UserResponse response, Predicate<RoleResponse> predicate) {
+        Set<RoleResponse> roles = response.getRoles();
+        return roles != null && roles.stream().anyMatch(predicate);
+    }
+}
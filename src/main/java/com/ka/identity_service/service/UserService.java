@@ -1,15 +1,24 @@
 package com.ka.identity_service.service;
 
 import com.ka.identity_service.dto.request.UserCreationRequest;
+import com.ka.identity_service.dto.request.UserField;
 import com.ka.identity_service.dto.request.UserUpdateRequest;
+import com.ka.identity_service.dto.response.RoleResponse;
 import com.ka.identity_service.dto.response.UserResponse;
 import com.ka.identity_service.entity.User;
 import com.ka.identity_service.enums.Role;
+import com.ka.identity_service.enums.VersionedCollection;
 import com.ka.identity_service.exception.AppException;
 import com.ka.identity_service.exception.ErrorCode;
+import com.ka.identity_service.mapper.RoleMapper;
 import com.ka.identity_service.mapper.UserMapper;
+import com.ka.identity_service.mapper.UserResponseAssembler;
 import com.ka.identity_service.repository.RoleRepository;
 import com.ka.identity_service.repository.UserRepository;
+import com.ka.identity_service.repository.projection.RolePermissionRow;
+import com.ka.identity_service.repository.projection.UserRoleRow;
+import com.ka.identity_service.repository.projection.UserRow;
+import com.ka.identity_service.repository.projection.UserVersion;
 import com.nimbusds.jose.proc.SecurityContext;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -19,14 +28,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PostAuthorize;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
@@ -35,8 +50,15 @@ import java.util.Optional;
 public class UserService {
     UserRepository userRepository;
     UserMapper userMapper;
+    RoleMapper roleMapper;
     PasswordEncoder passwordEncoder;
     RoleRepository roleRepository;
+    TokenEpochRegistry tokenEpochRegistry;
+    UserResponseAssembler userResponseAssembler;
+    UserResponseCache userResponseCache;
+    PlatformTransactionManager transactionManager;
+    ProfileClaims profileClaims;
+    CollectionVersions collectionVersions;
 
 
     public UserResponse createUser(UserCreationRequest request){
@@ -53,7 +75,11 @@ public class UserService {
 
 //        user.setRoles(roles);
 
-        return userMapper.toUserResponse(userRepository.save(user));
+        var response = userMapper.toUserResponse(userRepository.save(user));
+        collectionVersions.bump(VersionedCollection.USERS);
+        // Username có thể vừa bị xóa trước đó: token của user mới không được bị coi là của user đã xóa
+        tokenEpochRegistry.userCreated(user.getUsername());
+        return response;
     }
     //===
     //Một chức năng kiểm tra scope và quyền trước hoặc sau khi gọi API
@@ -68,43 +94,174 @@ public class UserService {
 
 //    @PreAuthorize("hasRole('ADMIN')")
     @PreAuthorize("hasAuthority('APPROVE_POST')")
+    @Transactional(readOnly = true)
     public List<UserResponse> getUsers(){
-        List<UserResponse> users = new ArrayList<>();
-        for(User user : userRepository.findAll()){
-            users.add(userMapper.toUserResponse(user));
-        }
-        return users;
+        // 3 query phẳng (user, user_roles, role_permissions) thay vì load entity + lazy roles cho từng user
+        List<UserRow> users = userRepository.findAllRows();
+        List<UserRoleRow> userRoles = users.isEmpty() ? List.of() : userRepository.findAllRoleRows();
+        List<RolePermissionRow> rolePermissions = userRoles.isEmpty() ? List.of() : roleRepository.findAllPermissionRows();
+        return userResponseAssembler.toUserResponses(users, userRoles, rolePermissions);
+    }
+
+    // Chỉ đọc các cột của field được chọn, roles / permissions chỉ query khi có field roles
+    // Field không được chọn vẫn có trong UserResponse (null / rỗng), controller lọc lại khi serialize
+    @PreAuthorize("hasAuthority('APPROVE_POST')")
+    @Transactional(readOnly = true)
+    public List<UserResponse> getUsers(Set<UserField> fields){
+        if (fields.containsAll(UserField.ALL))
+            return getUsers();
+        List<UserRow> users = userRepository.findRows(UserField.attributes(fields));
+        if (!fields.contains(UserField.ROLES) || users.isEmpty())
+            return userResponseAssembler.toUserResponses(users, List.of(), List.of());
+        List<UserRoleRow> userRoles = userRepository.findAllRoleRows();
+        List<RolePermissionRow> rolePermissions = userRoles.isEmpty() ? List.of() : roleRepository.findAllPermissionRows();
+        return userResponseAssembler.toUserResponses(users, userRoles, rolePermissions);
+    }
+
+    // ETag của GET /users: bộ đếm version của tập users (tăng khi user thay đổi, khi role / permission
+    // mà UserResponse chứa thay đổi), không đọc bảng user
+    @PreAuthorize("hasAuthority('APPROVE_POST')")
+    public String getUsersEtag(Set<UserField> fields){
+        return CollectionVersions.etag(VersionedCollection.USERS.key() + "-"
+                + collectionVersions.current(VersionedCollection.USERS) + fieldsSuffix(fields));
     }
 
+    // ETag của GET /users/{id}: version của user (@Version) + bộ đếm version của tập roles,
+    // user khác thay đổi không làm đổi ETag của user này
+    // null nếu user không tồn tại hoặc không phải user đang đăng nhập (giống @PostAuthorize của getUser):
+    // controller không trả 304 mà xử lý như request thường (lỗi / 403)
+    // Entry cache load từ version khác bị xóa: getUser ngay sau đó load lại nên body khớp với ETag
+    @Transactional(readOnly = true)
+    public String getUserEtag(String id, Set<UserField> fields){
+        String name = SecurityContextHolder.getContext().getAuthentication().getName();
+        return userRepository.findVersionById(id)
+                .filter(user -> user.username().equals(name))
+                .map(user -> {
+                    userResponseCache.evictIfStale(id, user.version());
+                    return CollectionVersions.etag("user-" + user.version() + "."
+                            + collectionVersions.current(VersionedCollection.ROLES) + fieldsSuffix(fields));
+                })
+                .orElse(null);
+    }
+
+    // Thứ tự: claim profile trong token (jwt.profile-claims) → UserResponseCache
+    // → transaction readOnly (được route sang replica nếu có)
     public UserResponse getMyInfo(){
         var context = SecurityContextHolder.getContext();
         String name = context.getAuthentication().getName();
 
-        User user = userRepository.findByUsername(name)
-                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
-        return userMapper.toUserResponse(user);
+        if (profileClaims.isEnabled() && context.getAuthentication() instanceof JwtAuthenticationToken jwtAuthentication) {
+            UserResponse fromToken = profileClaims.read(jwtAuthentication.getToken(), this::roleResponses);
+            if (fromToken != null)
+                return fromToken;
+        }
+
+        return userResponseCache.getByUsername(name, () -> inReadOnlyTransaction(() -> {
+            UserRow user = userRepository.findRowByUsername(name)
+                    .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
+            return new UserResponseCache.Versioned(toUserResponse(user), versionOf(user.id()));
+        }));
     }
 
 //    @PostAuthorize("hasRole('ADMIN')")
     @PostAuthorize("returnObject.username == authentication.name")
     public UserResponse getUser(String id){
-        return userMapper.toUserResponse(userRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("User not found")));
+        return userResponseCache.getById(id, () -> inReadOnlyTransaction(() -> {
+            UserRow user = userRepository.findRowById(id)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            return new UserResponseCache.Versioned(toUserResponse(user), versionOf(id));
+        }));
+    }
+
+    // Có trong cache thì dùng bản đầy đủ, miss thì chỉ select cột được chọn
+    // và không đưa vào cache (cache chỉ giữ UserResponse đầy đủ)
+    // Luôn select username để kiểm tra @PostAuthorize
+    @PostAuthorize("returnObject.username == authentication.name")
+    public UserResponse getUser(String id, Set<UserField> fields){
+        if (fields.containsAll(UserField.ALL))
+            return getUser(id);
+        UserResponse cached = userResponseCache.peekById(id);
+        if (cached != null)
+            return cached;
+
+        Set<String> attributes = UserField.attributes(fields);
+        attributes.add(UserField.USERNAME.getAttribute());
+        return inReadOnlyTransaction(() -> {
+            UserRow user = userRepository.findRow(id, attributes)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            return fields.contains(UserField.ROLES)
+                    ? toUserResponse(user)
+                    : userResponseAssembler.toUserResponse(user, List.of(), List.of());
+        });
+    }
+
+    // Response theo fields khác nhau thì ETag khác nhau
+    private static String fieldsSuffix(Set<UserField> fields){
+        return fields.containsAll(UserField.ALL) ? "" : "-" + String.join(".", UserField.properties(fields));
+    }
+
+    // Các query trong cùng transaction nên user / roles / permissions nhất quán với nhau
+    // Không đặt @Transactional lên getMyInfo / getUser để cache hit không phải lấy connection
+    private <T> T inReadOnlyTransaction(Supplier<T> loader){
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> loader.get());
+    }
+
+    // Version (@Version) lưu cùng entry cache, đọc trong transaction của lần load
+    private Long versionOf(String id){
+        return userRepository.findVersionById(id).map(UserVersion::version).orElse(null);
+    }
+
+    // Chi tiết role theo tên cho response dựng từ claim profile, role đã cache thì không đọc DB
+    private Set<RoleResponse> roleResponses(Collection<String> names){
+        return userResponseCache.getRoles(names, missing -> inReadOnlyTransaction(() ->
+                roleRepository.findAllByNameIn(missing).stream()
+                        .map(roleMapper::toRoleResponse)
+                        .toList()));
+    }
+
+    // Đọc roles + permissions của một user bằng projection
+    private UserResponse toUserResponse(UserRow user){
+        List<UserRoleRow> userRoles = userRepository.findRoleRows(List.of(user.id()));
+        List<String> roleNames = userRoles.stream().map(UserRoleRow::roleName).distinct().toList();
+        List<RolePermissionRow> rolePermissions = roleNames.isEmpty()
+                ? List.of()
+                : roleRepository.findPermissionRows(roleNames);
+        return userResponseAssembler.toUserResponse(user, userRoles, rolePermissions);
     }
 
+    @Transactional
     public UserResponse updateUser(String userId, UserUpdateRequest request){
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        // Đổi mật khẩu → thu hồi mọi token đã cấp trước đó
+        boolean passwordChanged = !passwordEncoder.matches(request.getPassword(), user.getPassword());
         userMapper.updateUser(user, request);
 
         user.setPassword(passwordEncoder.encode(request.getPassword()));
+        // Token đang mang profile cũ sẽ không được dùng cho myInfo nữa
+        long profileVersion = user.getProfileVersion() == null ? 1 : user.getProfileVersion() + 1;
+        user.setProfileVersion(profileVersion);
         var roles = roleRepository.findAllById(request.getRoles());
         user.setRoles(new HashSet<>(roles));
-        return userMapper.toUserResponse(userRepository.save(user));
+        var response = userMapper.toUserResponse(userRepository.save(user));
+        userResponseCache.evictUser(user.getId(), user.getUsername());
+        collectionVersions.bump(VersionedCollection.USERS);
+        tokenEpochRegistry.profileChanged(user.getUsername(), profileVersion);
+        if (passwordChanged)
+            tokenEpochRegistry.revokeAll(user.getUsername());
+        return response;
     }
 
     public void deleteUser(String userId){
-        userRepository.deleteById(userId);
+        // Token của user bị xóa phải hết hiệu lực ngay
+        userRepository.findById(userId).ifPresent(user -> {
+            userRepository.delete(user);
+            userResponseCache.evictUser(user.getId(), user.getUsername());
+            collectionVersions.bump(VersionedCollection.USERS);
+            tokenEpochRegistry.markDeleted(user.getUsername());
+        });
     }
 }
 
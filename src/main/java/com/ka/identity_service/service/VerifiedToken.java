@@ -0,0 +1,16 @@
+package com.ka.identity_service.service;
+
+import java.util.Map;
+
+// Các claim của access token đã verify chữ ký (chưa kiểm tra hạn / thu hồi)
+// issueTime / expirationTime tính bằng giây, null nếu token không có claim đó
+// tokenEpoch: claim "tep" (token epoch của user lúc phát hành), null với token cấp trước khi có claim này
+// profile: claim "profile" (jwt.profile-claims), null nếu không có
+public record VerifiedToken(String subject, String issuer, Long issueTime, Long expirationTime, Long tokenEpoch,
+                            String jwtId, String scope, String perms, Map<String, Object> profile) {
+
+    // Giống điều kiện cũ expiryTime.after(new Date()): token không có exp bị coi là hết hạn
+    public boolean isExpired(long nowMillis) {
+        return expirationTime == null || expirationTime * 1000 <= nowMillis;
+    }
+}
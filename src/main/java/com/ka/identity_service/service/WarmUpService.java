@@ -0,0 +1,254 @@
+package com.ka.identity_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ka.identity_service.configuration.BitsetJwtAuthenticationConverter;
+import com.ka.identity_service.configuration.JwtAuthoritiesConverter;
+import com.ka.identity_service.dto.request.ApiResponse;
+import com.ka.identity_service.dto.request.AuthenticationRequest;
+import com.ka.identity_service.dto.request.IntrospectRequest;
+import com.ka.identity_service.entity.Permission;
+import com.ka.identity_service.entity.Role;
+import com.ka.identity_service.entity.User;
+import com.ka.identity_service.mapper.RoleMapper;
+import com.ka.identity_service.mapper.UserMapper;
+import com.ka.identity_service.mapper.UserResponseAssembler;
+import com.ka.identity_service.repository.RoleRepository;
+import com.ka.identity_service.repository.UserRepository;
+import com.ka.identity_service.repository.projection.RolePermissionRow;
+import com.ka.identity_service.repository.projection.UserRoleRow;
+import com.ka.identity_service.repository.projection.UserRow;
+import com.nimbusds.jwt.SignedJWT;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Warm-up lúc khởi động, chạy trước khi readiness probe chuyển sang ACCEPTING_TRAFFIC
+ * - Chạy lặp các đường nóng với dữ liệu giả lập: generateToken / verify, CustomJwtDecoder,
+ *   convert authority, mapper, JSON, BCrypt và các query đại diện
+ * - Dừng khi JIT ổn định: thời gian compile tăng thêm trong một vòng nhỏ hơn app.warm-up.stable-compile-ratio
+ *   lần thời gian chạy của vòng đó (hai vòng liên tiếp), hoặc khi hết app.warm-up.max-duration
+ * - Song song với đó: load sẵn PermissionRegistry và authority set cho scope của từng role
+ * - Lỗi trong warm-up chỉ được log, không chặn việc khởi động
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class WarmUpService {
+
+    // Số lần chạy các bước chỉ tốn CPU / các bước có query trong một vòng
+    static int CPU_ITERATIONS = 1000;
+    static int QUERY_ITERATIONS = 50;
+    static int MIN_ROUNDS = 3;
+
+    AuthenticationService authenticationService;
+    TokenValidator tokenValidator;
+    TokenEpochRegistry tokenEpochRegistry;
+    TokenRevocationService tokenRevocationService;
+    PermissionRegistry permissionRegistry;
+    JwtDecoder jwtDecoder;
+    JwtAuthoritiesConverter jwtAuthoritiesConverter;
+    BitsetJwtAuthenticationConverter jwtAuthenticationConverter;
+    UserMapper userMapper;
+    RoleMapper roleMapper;
+    UserResponseAssembler userResponseAssembler;
+    UserRepository userRepository;
+    RoleRepository roleRepository;
+    ObjectMapper objectMapper;
+    PlatformTransactionManager transactionManager;
+
+    @NonFinal
+    @Value("${app.warm-up.max-duration:30s}")
+    protected Duration MAX_DURATION;
+
+    @NonFinal
+    @Value("${app.warm-up.stable-compile-ratio:0.05}")
+    protected double STABLE_COMPILE_RATIO;
+
+    public void warmUp() {
+        long start = System.nanoTime();
+        long deadline = start + MAX_DURATION.toNanos();
+
+        CompletableFuture<Void> prePopulation = CompletableFuture.runAsync(this::prePopulateCaches);
+
+        String username = "warm-up-" + UUID.randomUUID();
+        tokenEpochRegistry.pin(username);
+        try {
+            Fixture fixture = new Fixture(username);
+            CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+            boolean measurable = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+
+            int rounds = 0;
+            int stableRounds = 0;
+            boolean stable = false;
+            long compileTime = measurable ? compilation.getTotalCompilationTime() : 0;
+            while (System.nanoTime() < deadline) {
+                long roundStart = System.nanoTime();
+                round(fixture);
+                long roundMillis = Math.max(1, Duration.ofNanos(System.nanoTime() - roundStart).toMillis());
+                rounds++;
+                if (!measurable) {
+                    // Không đo được thời gian compile → chạy đủ số vòng tối thiểu
+                    stable = rounds >= MIN_ROUNDS;
+                    if (stable)
+                        break;
+                    continue;
+                }
+                long current = compilation.getTotalCompilationTime();
+                // Thời gian compile (ms, cộng dồn các compiler thread) so với thời gian chạy của vòng
+                double ratio = (double) (current - compileTime) / roundMillis;
+                stableRounds = ratio < STABLE_COMPILE_RATIO ? stableRounds + 1 : 0;
+                compileTime = current;
+                stable = rounds >= MIN_ROUNDS && stableRounds >= 2;
+                if (stable)
+                    break;
+            }
+
+            prePopulation.join();
+            log.info("Warm-up finished after {} rounds in {} ms ({})", rounds,
+                    Duration.ofNanos(System.nanoTime() - start).toMillis(),
+                    stable ? "compilation stable" : "max-duration reached");
+        } catch (RuntimeException e) {
+            log.warn("Warm-up aborted, continuing startup", e);
+        } finally {
+            tokenEpochRegistry.forget(username);
+        }
+    }
+
+    private void round(Fixture fixture) {
+        for (int i = 0; i < CPU_ITERATIONS; i++)
+            exerciseCpuPaths(fixture);
+        for (int i = 0; i < QUERY_ITERATIONS; i++)
+            exerciseQueries(fixture);
+        // Mỗi lần BCrypt(10) tốn hàng chục ms, chỉ cần vài lần để vòng lặp bên trong được compile
+        fixture.passwordEncoder.matches("warm-up", fixture.passwordHash);
+    }
+
+    private void exerciseCpuPaths(Fixture fixture) {
+        try {
+            String token = authenticationService.generateToken(fixture.user);
+            tokenValidator.verifySignature(token);
+
+            Jwt jwt = toJwt(token);
+            jwtAuthenticationConverter.convert(jwt);
+
+            var userResponse = userMapper.toUserResponse(fixture.user);
+            userResponseAssembler.toUserResponse(fixture.userRow, fixture.userRoles, fixture.rolePermissions);
+            roleMapper.toRoleResponse(fixture.role);
+
+            objectMapper.writeValueAsBytes(ApiResponse.builder().result(userResponse).build());
+            objectMapper.readValue(fixture.authenticationJson, AuthenticationRequest.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("Warm-up step failed", e);
+        }
+    }
+
+    // Đường đi có DB: decoder (introspect → epoch + blacklist) và các query đọc user / role
+    private void exerciseQueries(Fixture fixture) {
+        try {
+            String token = authenticationService.generateToken(fixture.user);
+            jwtDecoder.decode(token);
+            authenticationService.introspect(IntrospectRequest.builder().token(token).build());
+            tokenRevocationService.revokedAmong(List.of(UUID.randomUUID().toString()));
+
+            readOnly().executeWithoutResult(status -> {
+                userRepository.findRowByUsername(fixture.user.getUsername());
+                userRepository.findRoleRows(List.of(fixture.userRow.id()));
+                roleRepository.findPermissionRows(List.of(fixture.role.getName()));
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Warm-up query failed", e);
+        }
+    }
+
+    // Load sẵn cache: ánh xạ bitIndex của permission, authority set cho scope của từng role
+    // (user chỉ có một role là trường hợp phổ biến nhất)
+    private void prePopulateCaches() {
+        try {
+            permissionRegistry.preload();
+            List<Role> roles = readOnly().execute(status -> roleRepository.findAll());
+            if (roles == null)
+                return;
+            for (Role role : roles) {
+                User user = User.builder()
+                        .username("warm-up-" + role.getName())
+                        .roles(Set.of(role))
+                        .build();
+                jwtAuthoritiesConverter.convertToSet(toJwt(authenticationService.generateToken(user)));
+            }
+            log.info("Pre-populated authority cache for {} roles", roles.size());
+        } catch (Exception e) {
+            log.warn("Cache pre-population failed", e);
+        }
+    }
+
+    private TransactionTemplate readOnly() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    // Jwt chỉ với các claim mà converter đọc (sub, scope, perms)
+    private static Jwt toJwt(String token) throws ParseException {
+        var claims = SignedJWT.parse(token).getJWTClaimsSet();
+        Jwt.Builder builder = Jwt.withTokenValue(token)
+                .header("alg", "HS512")
+                .subject(claims.getSubject())
+                .claim("scope", claims.getStringClaim("scope"));
+        String perms = claims.getStringClaim(PermissionRegistry.PERMS_CLAIM);
+        if (perms != null)
+            builder.claim(PermissionRegistry.PERMS_CLAIM, perms);
+        return builder.build();
+    }
+
+    // Dữ liệu giả lập, không được ghi xuống DB
+    private static class Fixture {
+        final User user;
+        final Role role;
+        final UserRow userRow;
+        final List<UserRoleRow> userRoles;
+        final List<RolePermissionRow> rolePermissions;
+        final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder(10);
+        final String passwordHash;
+        final byte[] authenticationJson;
+
+        Fixture(String username) {
+            Permission permission = Permission.builder().name("WARM_UP").description("warm-up").build();
+            role = Role.builder().name("WARM_UP").description("warm-up").permissions(Set.of(permission)).build();
+            user = User.builder()
+                    .id(UUID.randomUUID().toString())
+                    .username(username)
+                    .firstName("Warm")
+                    .lastName("Up")
+                    .dob(LocalDate.of(2000, 1, 1))
+                    .roles(Set.of(role))
+                    .build();
+            userRow = new UserRow(user.getId(), username, user.getFirstName(), user.getLastName(), user.getDob());
+            userRoles = List.of(new UserRoleRow(user.getId(), role.getName(), role.getDescription()));
+            rolePermissions = List.of(new RolePermissionRow(role.getName(), permission.getName(), permission.getDescription()));
+            passwordHash = passwordEncoder.encode("warm-up");
+            authenticationJson = ("{\"username\":\"" + username + "\",\"password\":\"warm-up\"}").getBytes();
+        }
+    }
+}
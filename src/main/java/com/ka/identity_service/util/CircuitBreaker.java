@@ -0,0 +1,83 @@
+package com.ka.identity_service.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/*
+ * Circuit breaker đơn giản theo số lỗi liên tiếp
+ * - CLOSED: cho mọi lời gọi đi qua, failureThreshold lỗi liên tiếp → OPEN
+ * - OPEN: từ chối ngay (caller dùng fallback), sau openDuration → HALF_OPEN
+ * - HALF_OPEN: chỉ cho đúng 1 lời gọi thử, thành công → CLOSED, lỗi → OPEN thêm một openDuration
+ * - failingFor(): sự cố đã kéo dài bao lâu, tính từ lỗi đầu tiên của chuỗi lỗi hiện tại
+ *
+ * Caller phải báo kết quả bằng onSuccess() / onFailure() cho mỗi lần tryAcquire() trả về true
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // failures: số lỗi liên tiếp, failingSince / openedAt theo clock (nano giây), -1 nếu không có
+    private record Status(State state, int failures, long failingSince, long openedAt) {
+    }
+
+    private static final Status HEALTHY = new Status(State.CLOSED, 0, -1, -1);
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+    private final AtomicReference<Status> status = new AtomicReference<>(HEALTHY);
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+        this.clock = clock;
+    }
+
+    // true → được gọi xuống dependency, false → dùng fallback
+    public boolean tryAcquire() {
+        while (true) {
+            Status current = status.get();
+            if (current.state() == State.CLOSED)
+                return true;
+            if (current.state() == State.HALF_OPEN || clock.getAsLong() - current.openedAt() < openNanos)
+                return false;
+            // Hết openDuration: thread nào đổi được sang HALF_OPEN thì được gọi thử
+            Status trial = new Status(State.HALF_OPEN, current.failures(), current.failingSince(), current.openedAt());
+            if (status.compareAndSet(current, trial))
+                return true;
+        }
+    }
+
+    public void onSuccess() {
+        status.set(HEALTHY);
+    }
+
+    public void onFailure() {
+        long now = clock.getAsLong();
+        status.updateAndGet(current -> {
+            int failures = current.failures() + 1;
+            long failingSince = current.failingSince() < 0 ? now : current.failingSince();
+            if (current.state() == State.HALF_OPEN || failures >= failureThreshold)
+                return new Status(State.OPEN, failures, failingSince,
+                        current.state() == State.OPEN ? current.openedAt() : now);
+            return new Status(current.state(), failures, failingSince, current.openedAt());
+        });
+    }
+
+    public State state() {
+        return status.get().state();
+    }
+
+    // Thời gian kể từ lỗi đầu tiên của chuỗi lỗi hiện tại, Duration.ZERO nếu đang không lỗi
+    public Duration failingFor() {
+        long failingSince = status.get().failingSince();
+        return failingSince < 0 ? Duration.ZERO : Duration.ofNanos(clock.getAsLong() - failingSince);
+    }
+}
@@ -0,0 +1,123 @@
+package com.ka.identity_service.util;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/*
+ * Gộp các lời gọi đồng thời có cùng key thành một lần thực thi (single-flight)
+ * - Thread đầu tiên (leader) chạy loader, các thread khác chờ và dùng chung kết quả
+ * - retain > 0: kết quả thành công được giữ thêm một khoảng (grace window)
+ *   để các lần retry trong khoảng đó nhận lại đúng kết quả cũ
+ * - Lỗi không được giữ lại, lần gọi sau sẽ chạy lại loader
+ * - maxWait: thread chờ quá lâu sẽ tự chạy loader của mình thay vì tiếp tục chờ leader
+ */
+public class SingleFlight<K, V> {
+
+    // Khi số key vượt ngưỡng này thì dọn các kết quả đã hết grace window
+    private static final int PURGE_THRESHOLD = 1024;
+
+    private final Map<K, Call<V>> calls = new ConcurrentHashMap<>();
+    private final long retainNanos;
+
+    public SingleFlight() {
+        this(Duration.ZERO);
+    }
+
+    public SingleFlight(Duration retain) {
+        this.retainNanos = retain.toNanos();
+    }
+
+    private static final class Call<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        volatile long completedAt;
+
+        boolean isExpired(long now, long retainNanos) {
+            return future.isDone() && now - completedAt >= retainNanos;
+        }
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        return execute(key, loader, null);
+    }
+
+    // maxWait == null → chờ leader tới khi xong
+    public V execute(K key, Supplier<V> loader, Duration maxWait) {
+        long now = System.nanoTime();
+        Call<V> call = calls.get(key);
+        if (call != null && call.isExpired(now, retainNanos)) {
+            calls.remove(key, call);
+            call = null;
+        }
+
+        if (call == null) {
+            Call<V> created = new Call<>();
+            call = calls.putIfAbsent(key, created);
+            if (call == null)
+                return lead(key, created, loader);
+        }
+        return maxWait == null ? await(call) : await(call, maxWait, loader);
+    }
+
+    // Số key đang được theo dõi (đang chạy hoặc còn trong grace window)
+    public int size() {
+        return calls.size();
+    }
+
+    private V lead(K key, Call<V> call, Supplier<V> loader) {
+        if (calls.size() > PURGE_THRESHOLD)
+            purgeExpired();
+        try {
+            V value = loader.get();
+            call.completedAt = System.nanoTime();
+            call.future.complete(value);
+            if (retainNanos <= 0)
+                calls.remove(key, call);
+            return value;
+        } catch (RuntimeException | Error e) {
+            calls.remove(key, call);
+            call.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private V await(Call<V> call) {
+        try {
+            return call.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw e;
+        }
+    }
+
+    private V await(Call<V> call, Duration maxWait, Supplier<V> loader) {
+        try {
+            return call.future.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return loader.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        calls.entrySet().removeIf(entry -> entry.getValue().isExpired(now, retainNanos));
+    }
+}
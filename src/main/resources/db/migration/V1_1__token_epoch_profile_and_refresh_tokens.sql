@@ -0,0 +1,50 @@
+-- Cột / bảng được thêm sau bản đã phát hành (V1)
+-- Chạy được cả trên DB mới (sau V1) lẫn DB baseline ở version 1: DB cũ có thể đã được Hibernate
+-- (ddl-auto: update) thêm một phần các cột này nên mỗi thay đổi đều kiểm tra information_schema trước
+
+-- Token epoch (logout mọi thiết bị / đổi mật khẩu) và phiên bản profile (claim profile)
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'user' AND COLUMN_NAME = 'tokens_valid_after') = 0,
+              'ALTER TABLE `user` ADD COLUMN tokens_valid_after BIGINT, ALGORITHM = INSTANT',
+              'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'user' AND COLUMN_NAME = 'profile_version') = 0,
+              'ALTER TABLE `user` ADD COLUMN profile_version BIGINT, ALGORITHM = INSTANT',
+              'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- bitIndex của permission (claim perms); permission cũ được đánh số ở V4
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'permission' AND COLUMN_NAME = 'bit_index') = 0,
+              'ALTER TABLE permission ADD COLUMN bit_index INTEGER, ALGORITHM = INSTANT',
+              'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Hibernate có thể đã tạo unique index với tên tự sinh, chỉ tạo khi chưa có unique index nào trên bit_index
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.STATISTICS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'permission' AND COLUMN_NAME = 'bit_index'
+                 AND NON_UNIQUE = 0) = 0,
+              'CREATE UNIQUE INDEX uk_permission_bit_index ON permission (bit_index) ALGORITHM = INPLACE LOCK = NONE',
+              'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Refresh token opaque (rotation theo family)
+CREATE TABLE IF NOT EXISTS refresh_token (
+    id          VARCHAR(255) NOT NULL,
+    family_id   VARCHAR(255) NOT NULL,
+    username    VARCHAR(255) NOT NULL,
+    expiry_time DATETIME(6),
+    used        BIT          NOT NULL,
+    revoked     BIT          NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
@@ -0,0 +1,51 @@
+-- Schema ban đầu, giống với bảng Hibernate (ddl-auto: update) đã tạo trước đây
+-- DB đã có sẵn bảng được baseline ở version 1 (spring.flyway.baseline-on-migrate) nên file này bị bỏ qua
+-- Chỉ chứa bảng / cột của bản đã phát hành; cột và bảng thêm sau nằm ở V1_1 trở đi để DB baseline cũng nhận được
+
+CREATE TABLE `user` (
+    id         VARCHAR(255) NOT NULL,
+    username   VARCHAR(255),
+    password   VARCHAR(255),
+    first_name VARCHAR(255),
+    last_name  VARCHAR(255),
+    dob        DATE,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE permission (
+    name        VARCHAR(255) NOT NULL,
+    description VARCHAR(255),
+    PRIMARY KEY (name)
+) ENGINE = InnoDB;
+
+CREATE TABLE role (
+    name        VARCHAR(255) NOT NULL,
+    description VARCHAR(255),
+    PRIMARY KEY (name)
+) ENGINE = InnoDB;
+
+-- Khóa chính (user_id, roles_name) phục vụ tra cứu role theo user,
+-- index roles_name phục vụ chiều ngược lại (user nào có role này) và FK
+CREATE TABLE user_roles (
+    user_id    VARCHAR(255) NOT NULL,
+    roles_name VARCHAR(255) NOT NULL,
+    PRIMARY KEY (user_id, roles_name),
+    KEY ix_user_roles_roles_name (roles_name),
+    CONSTRAINT fk_user_roles_user FOREIGN KEY (user_id) REFERENCES `user` (id),
+    CONSTRAINT fk_user_roles_role FOREIGN KEY (roles_name) REFERENCES role (name)
+) ENGINE = InnoDB;
+
+CREATE TABLE role_permissions (
+    role_name        VARCHAR(255) NOT NULL,
+    permissions_name VARCHAR(255) NOT NULL,
+    PRIMARY KEY (role_name, permissions_name),
+    KEY ix_role_permissions_permissions_name (permissions_name),
+    CONSTRAINT fk_role_permissions_role FOREIGN KEY (role_name) REFERENCES role (name),
+    CONSTRAINT fk_role_permissions_permission FOREIGN KEY (permissions_name) REFERENCES permission (name)
+) ENGINE = InnoDB;
+
+CREATE TABLE invalidated_token (
+    id          VARCHAR(255) NOT NULL,
+    expiry_time DATETIME(6),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
@@ -0,0 +1,14 @@
+-- Index cho các đường xử lý nóng
+-- ALGORITHM=INPLACE, LOCK=NONE: tạo index online, bảng vẫn đọc / ghi được trong lúc tạo
+-- (MySQL báo lỗi thay vì âm thầm khóa bảng nếu không tạo online được)
+
+-- Đăng nhập, myInfo, token epoch: tra cứu user theo username
+-- Lưu ý: migration sẽ lỗi nếu DB hiện tại có username trùng, cần xử lý dữ liệu trước
+CREATE UNIQUE INDEX ux_user_username ON `user` (username) ALGORITHM = INPLACE LOCK = NONE;
+
+-- Dọn token hết hạn khỏi blacklist
+CREATE INDEX ix_invalidated_token_expiry_time ON invalidated_token (expiry_time) ALGORITHM = INPLACE LOCK = NONE;
+
+-- Thu hồi cả phiên (revokeFamily) và logout mọi thiết bị (revokeAllByUsername)
+CREATE INDEX ix_refresh_token_family_id ON refresh_token (family_id) ALGORITHM = INPLACE LOCK = NONE;
+CREATE INDEX ix_refresh_token_username ON refresh_token (username) ALGORITHM = INPLACE LOCK = NONE;
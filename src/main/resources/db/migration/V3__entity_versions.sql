@@ -0,0 +1,18 @@
+-- Version cho conditional GET (ETag / If-None-Match)
+-- ALGORITHM=INSTANT: thêm cột chỉ sửa metadata, không copy lại bảng (MySQL 8.0.12+)
+
+-- Version của từng entity (@Version): optimistic locking + ETag của GET /users/{id}
+-- Dòng đã có bắt đầu từ 0
+ALTER TABLE `user` ADD COLUMN version BIGINT NOT NULL DEFAULT 0, ALGORITHM = INSTANT;
+ALTER TABLE role ADD COLUMN version BIGINT NOT NULL DEFAULT 0, ALGORITHM = INSTANT;
+ALTER TABLE permission ADD COLUMN version BIGINT NOT NULL DEFAULT 0, ALGORITHM = INSTANT;
+
+-- Bộ đếm version cho cả tập (users, roles, permissions), tăng mỗi khi tập đó thay đổi
+-- ETag của API danh sách chỉ cần đọc 1 dòng theo khóa chính thay vì cả bảng
+CREATE TABLE collection_version (
+    name    VARCHAR(64) NOT NULL,
+    version BIGINT      NOT NULL,
+    PRIMARY KEY (name)
+) ENGINE = InnoDB;
+
+INSERT INTO collection_version (name, version) VALUES ('users', 0), ('roles', 0), ('permissions', 0);
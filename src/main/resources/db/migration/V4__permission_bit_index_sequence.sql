@@ -0,0 +1,17 @@
+-- bitIndex của permission được cấp từ bộ đếm chỉ tăng, không dùng lại index của permission đã xóa:
+-- token còn hạn mang bit đó sẽ bị decode thành permission mới (leo thang quyền)
+CREATE TABLE id_sequence (
+    name       VARCHAR(64) NOT NULL,
+    next_value BIGINT      NOT NULL,
+    PRIMARY KEY (name)
+) ENGINE = InnoDB;
+
+-- Permission cũ (tạo trước khi có bitIndex) được đánh số ở đây, không còn đánh số lúc decode JWT
+SELECT COALESCE(MAX(bit_index), -1) INTO @next_bit_index FROM permission;
+UPDATE permission
+SET bit_index = (@next_bit_index := @next_bit_index + 1)
+WHERE bit_index IS NULL
+ORDER BY name;
+
+INSERT INTO id_sequence (name, next_value)
+SELECT 'permission_bit_index', COALESCE(MAX(bit_index), -1) + 1 FROM permission;
@@ -0,0 +1,35 @@
+package com.ka.identity_service.configuration;
+
+import com.ka.identity_service.dto.response.UserResponse;
+import com.ka.identity_service.entity.User;
+import com.ka.identity_service.repository.projection.UserRow;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+/**
+ * Test cho IdentityRuntimeHints (không cần Spring Context).
+ */
+public class IdentityRuntimeHintsTest {
+
+    @Test
+    void registerHints_coversDtoEntityProjectionAndMapper() {
+        RuntimeHints hints = new RuntimeHints();
+        new IdentityRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        Assertions.assertThat(RuntimeHintsPredicates.reflection().onType(UserResponse.class)).accepts(hints);
+        Assertions.assertThat(RuntimeHintsPredicates.reflection().onType(UserResponse.UserResponseBuilder.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS)).accepts(hints);
+        Assertions.assertThat(RuntimeHintsPredicates.reflection().onType(User.class)
+                .withMemberCategory(MemberCategory.DECLARED_FIELDS)).accepts(hints);
+        Assertions.assertThat(RuntimeHintsPredicates.reflection().onType(UserRow.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)).accepts(hints);
+        Assertions.assertThat(RuntimeHintsPredicates.reflection()
+                .onType(TypeReference.of("com.ka.identity_service.mapper.UserMapperImpl"))).accepts(hints);
+        Assertions.assertThat(RuntimeHintsPredicates.resource().forResource("db/migration/V1__init_schema.sql"))
+                .accepts(hints);
+    }
+}
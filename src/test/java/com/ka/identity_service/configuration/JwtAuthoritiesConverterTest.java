@@ -0,0 +1,83 @@
+package com.ka.identity_service.configuration;
+
+import com.ka.identity_service.service.PermissionRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Test cho cache authority của JwtAuthoritiesConverter (không cần Spring Context).
+ */
+public class JwtAuthoritiesConverterTest {
+
+    private PermissionRegistry permissionRegistry;
+    private JwtAuthoritiesConverter converter;
+
+    @BeforeEach
+    void initData() {
+        permissionRegistry = Mockito.mock(PermissionRegistry.class);
+        when(permissionRegistry.generation()).thenReturn(1);
+        when(permissionRegistry.decode("Aw")).thenReturn(List.of("READ", "WRITE"));
+        converter = new JwtAuthoritiesConverter(permissionRegistry, new AuthorityIndex(), 4);
+    }
+
+    @Test
+    void convert_sameClaims_returnsCachedInstance() {
+        var byScope = converter.convertToSet(jwt("ROLE_USER APPROVE_POST", null));
+        var byClaims = converter.convertToSet(jwt("ROLE_USER", "Aw"));
+
+        Assertions.assertThat(converter.convertToSet(jwt("ROLE_USER APPROVE_POST", null))).isSameAs(byScope);
+        Assertions.assertThat(converter.convertToSet(jwt("ROLE_USER", "Aw"))).isSameAs(byClaims);
+        Assertions.assertThat(byClaims.authorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER", "READ", "WRITE");
+        // Cùng authority giữa các token dùng chung một object
+        Assertions.assertThat(byClaims.authorities().get(0)).isSameAs(byScope.authorities().get(0));
+        Mockito.verify(permissionRegistry, Mockito.times(1)).decode("Aw");
+    }
+
+    @Test
+    void convert_registryGenerationChanged_decodesAgain() {
+        var before = converter.convertToSet(jwt("ROLE_USER", "Aw"));
+
+        // Instance khác đổi permission → registry load lại, bitIndex 1 giờ là DELETE
+        when(permissionRegistry.generation()).thenReturn(2);
+        when(permissionRegistry.decode("Aw")).thenReturn(List.of("READ", "DELETE"));
+        var after = converter.convertToSet(jwt("ROLE_USER", "Aw"));
+
+        Assertions.assertThat(after).isNotSameAs(before);
+        Assertions.assertThat(after.authorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER", "READ", "DELETE");
+        Assertions.assertThat(converter.convertToSet(jwt("ROLE_USER", "Aw"))).isSameAs(after);
+    }
+
+    @Test
+    void convert_manyDistinctScopes_cacheStaysBounded() {
+        for (int i = 0; i < 50; i++) {
+            converter.convertToSet(jwt("ROLE_USER P" + i, null));
+            converter.convertToSet(jwt("ROLE_USER P" + i, "Aw"));
+            // Mỗi map giữ tối đa jwt.authority-cache-size phần tử
+            Assertions.assertThat(converter.size()).isLessThanOrEqualTo(8);
+        }
+
+        Assertions.assertThat(converter.convertToSet(jwt("ROLE_USER P49", null)).authorities())
+                .extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER", "P49");
+    }
+
+    private static Jwt jwt(String scope, String perms) {
+        var builder = Jwt.withTokenValue("token")
+                .header("alg", "HS512")
+                .subject("john12")
+                .claim("scope", scope);
+        if (perms != null)
+            builder.claim(PermissionRegistry.PERMS_CLAIM, perms);
+        return builder.build();
+    }
+}
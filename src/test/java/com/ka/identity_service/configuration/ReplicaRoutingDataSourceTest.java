@@ -0,0 +1,163 @@
+package com.ka.identity_service.configuration;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cho ReplicaRoutingDataSource với 2 database H2 (primary / replica), không cần Spring Context.
+ * Mỗi database có bảng node chứa tên của chính nó để biết câu query chạy ở đâu.
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private SwitchableDataSource replica;
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void initData() {
+        DriverManagerDataSource primary = h2("primary");
+        replica = new SwitchableDataSource(h2("replica"));
+        routingDataSource = new ReplicaRoutingDataSource(primary, replica, Duration.ofMinutes(1), 1);
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void clear() {
+        ReplicaRoutingDataSource.clearRequest();
+        RequestContextHolder.resetRequestAttributes();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransaction_routedToReplica() {
+        Assertions.assertThat(readOnlyNode()).isEqualTo("replica");
+        Assertions.assertThat(readWriteNode()).isEqualTo("primary");
+    }
+
+    @Test
+    void readAfterWrite_sameRequest_stickyToPrimary() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        readWrite.executeWithoutResult(status -> currentNode());
+
+        Assertions.assertThat(readOnlyNode()).isEqualTo("primary");
+
+        // Request kết thúc → request mới đọc lại từ replica
+        ReplicaRoutingDataSource.clearRequest();
+        Assertions.assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    @Test
+    void readAfterWrite_threadWithoutRequest_notPinnedToPrimary() throws Exception {
+        // Thread của scheduler / gRPC: không đi qua filter nên không ai gọi clearRequest()
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            String node = CompletableFuture.supplyAsync(() -> {
+                readWrite.executeWithoutResult(status -> currentNode());
+                return readOnlyNode();
+            }, executor).get(5, TimeUnit.SECONDS);
+            Assertions.assertThat(node).isEqualTo("replica");
+
+            // Lần chạy sau trên cùng thread cũng đọc replica
+            Assertions.assertThat(CompletableFuture.supplyAsync(this::readOnlyNode, executor)
+                    .get(5, TimeUnit.SECONDS)).isEqualTo("replica");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void readAfterWrite_sameUser_stickyToPrimary() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("john", null, "USER"));
+        readWrite.executeWithoutResult(status -> currentNode());
+        ReplicaRoutingDataSource.clearRequest();
+
+        // Request sau của cùng user vẫn trong sticky-window
+        Assertions.assertThat(readOnlyNode()).isEqualTo("primary");
+
+        // User khác không bị ảnh hưởng
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("jane", null, "USER"));
+        Assertions.assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    @Test
+    void replicaDown_fallsBackToPrimary() {
+        replica.down = true;
+
+        // Lỗi khi lấy connection → dùng primary ngay trong lần gọi đó
+        Assertions.assertThat(readOnlyNode()).isEqualTo("primary");
+        Assertions.assertThat(routingDataSource.isReplicaHealthy()).isFalse();
+
+        // Replica sống lại, health check đưa nó trở lại
+        replica.down = false;
+        Assertions.assertThat(readOnlyNode()).isEqualTo("primary");
+        routingDataSource.checkReplicaHealth();
+        Assertions.assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    private String readOnlyNode() {
+        return readOnly.execute(status -> currentNode());
+    }
+
+    private String readWriteNode() {
+        return readWrite.execute(status -> currentNode());
+    }
+
+    private String currentNode() {
+        return jdbcTemplate.queryForObject("select name from node", String.class);
+    }
+
+    private static DriverManagerDataSource h2(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "sa");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("drop table if exists node");
+        jdbcTemplate.execute("create table node (name varchar(32))");
+        jdbcTemplate.update("insert into node values (?)", name);
+        return dataSource;
+    }
+
+    // DataSource có thể giả lập trạng thái sập
+    static class SwitchableDataSource extends DelegatingDataSource {
+        volatile boolean down;
+
+        SwitchableDataSource(DriverManagerDataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (down)
+                throw new SQLException("replica is down");
+            return super.getConnection();
+        }
+    }
+}
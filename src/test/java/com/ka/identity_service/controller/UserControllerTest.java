@@ -1,12 +1,17 @@
 package com.ka.identity_service.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.ka.identity_service.dto.request.UserCreationRequest;
+import com.ka.identity_service.dto.request.UserField;
 import com.ka.identity_service.dto.response.UserResponse;
 import com.ka.identity_service.service.UserService;
 import com.ka.identity_service.service.UserServiceTest;
 import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
@@ -15,13 +20,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
 
 @Slf4j
 @SpringBootTest
@@ -137,4 +146,102 @@ public class UserControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("message").value("Username must be at least 4 characters"));
 
     }
+
+    // Test case: caller nội bộ gửi và nhận CBOR / Smile, không có Accept thì vẫn là JSON
+    @Test
+    void createUser_binaryContentNegotiation_success() throws Exception {
+        // ===== GIVEN =====
+        Mockito.when(userService.createUser(ArgumentMatchers.any())).thenReturn(userResponse);
+
+        for (ObjectMapper mapper : List.of(new CBORMapper(), new SmileMapper())) {
+            mapper.registerModule(new JavaTimeModule());
+            MediaType mediaType = mapper instanceof CBORMapper
+                    ? MediaType.APPLICATION_CBOR
+                    : MediaType.parseMediaType("application/x-jackson-smile");
+
+            // ===== WHEN =====
+            byte[] body = mockMvc.perform(MockMvcRequestBuilders
+                            .post("/users")
+                            .contentType(mediaType)
+                            .accept(mediaType)
+                            .content(mapper.writeValueAsBytes(request)))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.content().contentType(mediaType))
+                    .andReturn().getResponse().getContentAsByteArray();
+
+            // ===== THEN =====
+            JsonNode response = mapper.readTree(body);
+            Assertions.assertThat(response.get("code").asInt()).isEqualTo(1000);
+            Assertions.assertThat(response.at("/result/id").asText()).isEqualTo("4055f7be-defd-4c5c-8195-ab7108ba1121");
+            Assertions.assertThat(response.at("/result/dob").asText()).isEqualTo("1990-01-01");
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/users")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .content(new CBORMapper().registerModule(new JavaTimeModule()).writeValueAsBytes(request)))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("result.username").value("john12"));
+    }
+
+    // Test case: fields chỉ giữ lại các field được chọn trong JSON, field không tồn tại → 1010
+    @Test
+    @WithMockUser(username = "john12")
+    void getUser_sparseFields_success() throws Exception {
+        // ===== GIVEN =====
+        Mockito.when(userService.getUser(ArgumentMatchers.eq(userResponse.getId()), ArgumentMatchers.any()))
+                .thenReturn(userResponse);
+
+        // ===== WHEN / THEN =====
+        String body = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/users/{userId}", userResponse.getId())
+                        .param("fields", "id,username"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode result = new ObjectMapper().readTree(body).get("result");
+        Assertions.assertThat(result.fieldNames()).toIterable().containsExactlyInAnyOrder("id", "username");
+        Mockito.verify(userService).getUser(userResponse.getId(), EnumSet.of(UserField.ID, UserField.USERNAME));
+
+        // Không có fields → đủ UserResponse
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/{userId}", userResponse.getId()))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("result.firstName").value("john"))
+                .andExpect(MockMvcResultMatchers.jsonPath("result.dob").value("1990-01-01"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/users/{userId}", userResponse.getId())
+                        .param("fields", "id,password"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value(1010));
+    }
+
+    // Test case: If-None-Match trùng ETag → 304, không gọi tới phần đọc user
+    @Test
+    @WithMockUser(username = "john12")
+    void getUser_ifNoneMatch_notModified() throws Exception {
+        // ===== GIVEN =====
+        String etag = "W/\"user-3.7\"";
+        Mockito.when(userService.getUserEtag(ArgumentMatchers.eq(userResponse.getId()), ArgumentMatchers.any()))
+                .thenReturn(etag);
+        Mockito.when(userService.getUser(ArgumentMatchers.eq(userResponse.getId()), ArgumentMatchers.any()))
+                .thenReturn(userResponse);
+
+        // ===== WHEN / THEN =====
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/users/{userId}", userResponse.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, etag))
+                .andExpect(MockMvcResultMatchers.content().string(""));
+        Mockito.verify(userService, Mockito.never()).getUser(ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        // ETag cũ → trả dữ liệu mới kèm ETag mới
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/users/{userId}", userResponse.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, "W/\"user-2.7\""))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, etag))
+                .andExpect(MockMvcResultMatchers.jsonPath("result.username").value("john12"));
+    }
 }
@@ -0,0 +1,184 @@
+package com.ka.identity_service.grpc;
+
+import com.ka.identity_service.dto.request.IntrospectBatchRequest;
+import com.ka.identity_service.dto.request.IntrospectRequest;
+import com.ka.identity_service.dto.response.IntrospectResponse;
+import com.ka.identity_service.exception.AppException;
+import com.ka.identity_service.exception.ErrorCode;
+import com.ka.identity_service.grpc.proto.TokenBatch;
+import com.ka.identity_service.grpc.proto.TokenIntrospectionGrpc;
+import com.ka.identity_service.grpc.proto.TokenRequest;
+import com.ka.identity_service.grpc.proto.TokenStatus;
+import com.ka.identity_service.grpc.proto.TokenStatusBatch;
+import com.ka.identity_service.service.AuthenticationService;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test cho TokenIntrospectionService qua loopback (gRPC server Netty trên 127.0.0.1), không cần Spring Context.
+ * AuthenticationService được mock: token bắt đầu bằng "good-" là hợp lệ, batch quá 3 token bị từ chối.
+ */
+public class TokenIntrospectionServiceTest {
+
+    private Server server;
+    private ManagedChannel channel;
+    private TokenIntrospectionGrpc.TokenIntrospectionBlockingStub blockingStub;
+    private TokenIntrospectionGrpc.TokenIntrospectionStub asyncStub;
+
+    @BeforeEach
+    void initData() throws Exception {
+        AuthenticationService authenticationService = Mockito.mock(AuthenticationService.class);
+        when(authenticationService.introspect(any())).thenAnswer(invocation ->
+                introspect(invocation.getArgument(0, IntrospectRequest.class).getToken()));
+        when(authenticationService.introspectBatch(any())).thenAnswer(invocation -> {
+            List<String> tokens = invocation.getArgument(0, IntrospectBatchRequest.class).getTokens();
+            if (tokens.size() > 3)
+                throw new AppException(ErrorCode.INTROSPECT_BATCH_TOO_LARGE);
+            return tokens.stream().map(TokenIntrospectionServiceTest::introspect).toList();
+        });
+        when(authenticationService.introspectCacheMaxAge(any())).thenAnswer(invocation ->
+                invocation.getArgument(0, IntrospectResponse.class).isActive() ? 30L : 0L);
+
+        server = NettyServerBuilder.forAddress(new InetSocketAddress("127.0.0.1", 0))
+                .addService(new TokenIntrospectionService(authenticationService))
+                .build()
+                .start();
+        channel = NettyChannelBuilder.forAddress("127.0.0.1", server.getPort())
+                .usePlaintext()
+                .build();
+        blockingStub = TokenIntrospectionGrpc.newBlockingStub(channel);
+        asyncStub = TokenIntrospectionGrpc.newStub(channel);
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void introspect_unary() {
+        TokenStatus active = blockingStub.introspect(TokenRequest.newBuilder().setToken("good-john").build());
+        Assertions.assertThat(active.getActive()).isTrue();
+        Assertions.assertThat(active.getSub()).isEqualTo("john");
+        Assertions.assertThat(active.getScope()).isEqualTo("ROLE_USER");
+        Assertions.assertThat(active.getExp()).isEqualTo(2000L);
+        Assertions.assertThat(active.getJti()).isEqualTo("jti-john");
+        Assertions.assertThat(active.getCacheMaxAge()).isEqualTo(30L);
+
+        // Token không hợp lệ: chỉ có active = false
+        TokenStatus inactive = blockingStub.introspect(TokenRequest.newBuilder().setToken("expired").build());
+        Assertions.assertThat(inactive).isEqualTo(TokenStatus.newBuilder().setActive(false).build());
+    }
+
+    @Test
+    void introspectBatch_unary_keepsOrder_andRejectsOversizedBatch() {
+        TokenStatusBatch result = blockingStub.introspectBatch(batch(7, "good-a", "bad", "good-b"));
+
+        Assertions.assertThat(result.getRequestId()).isEqualTo(7);
+        Assertions.assertThat(result.getResultsList()).extracting(TokenStatus::getActive)
+                .containsExactly(true, false, true);
+        Assertions.assertThat(result.getResults(2).getSub()).isEqualTo("b");
+
+        StatusRuntimeException exception = assertThrows(StatusRuntimeException.class,
+                () -> blockingStub.introspectBatch(batch(8, "1", "2", "3", "4")));
+        Assertions.assertThat(exception.getStatus().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+        Assertions.assertThat(exception.getStatus().getDescription())
+                .isEqualTo(ErrorCode.INTROSPECT_BATCH_TOO_LARGE.getMessage());
+    }
+
+    @Test
+    void introspectStream_oneResponsePerBatch_inOrder() throws Exception {
+        CollectingObserver responses = new CollectingObserver();
+        StreamObserver<TokenBatch> requests = asyncStub.introspectStream(responses);
+
+        for (int i = 1; i <= 50; i++)
+            requests.onNext(batch(i, "good-" + i, "bad-" + i));
+        requests.onCompleted();
+
+        Assertions.assertThat(responses.done.get(5, TimeUnit.SECONDS)).isNull();
+        Assertions.assertThat(responses.batches).hasSize(50);
+        for (int i = 0; i < 50; i++) {
+            TokenStatusBatch batch = responses.batches.get(i);
+            Assertions.assertThat(batch.getRequestId()).isEqualTo(i + 1);
+            Assertions.assertThat(batch.getResults(0).getSub()).isEqualTo(String.valueOf(i + 1));
+            Assertions.assertThat(batch.getResults(1).getActive()).isFalse();
+        }
+    }
+
+    @Test
+    void introspectStream_oversizedBatch_closesStream() throws Exception {
+        CollectingObserver responses = new CollectingObserver();
+        StreamObserver<TokenBatch> requests = asyncStub.introspectStream(responses);
+
+        requests.onNext(batch(1, "good-a"));
+        requests.onNext(batch(2, "1", "2", "3", "4"));
+
+        Throwable error = responses.done.get(5, TimeUnit.SECONDS);
+        Assertions.assertThat(Status.fromThrowable(error).getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+        Assertions.assertThat(responses.batches).extracting(TokenStatusBatch::getRequestId).containsExactly(1L);
+    }
+
+    private static TokenBatch batch(long requestId, String... tokens) {
+        return TokenBatch.newBuilder()
+                .setRequestId(requestId)
+                .addAllTokens(List.of(tokens))
+                .build();
+    }
+
+    private static IntrospectResponse introspect(String token) {
+        if (!token.startsWith("good-"))
+            return IntrospectResponse.builder().valid(false).build();
+        String username = token.substring("good-".length());
+        return IntrospectResponse.builder()
+                .valid(true)
+                .active(true)
+                .sub(username)
+                .scope("ROLE_USER")
+                .iat(1000L)
+                .exp(2000L)
+                .jti("jti-" + username)
+                .build();
+    }
+
+    // done: hoàn thành với null khi stream kết thúc bình thường, với lỗi khi server đóng stream bằng status lỗi
+    static class CollectingObserver implements StreamObserver<TokenStatusBatch> {
+        final List<TokenStatusBatch> batches = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Throwable> done = new CompletableFuture<>();
+
+        @Override
+        public void onNext(TokenStatusBatch value) {
+            batches.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.complete(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            done.complete(null);
+        }
+    }
+}
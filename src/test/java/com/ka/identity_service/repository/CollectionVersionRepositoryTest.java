@@ -0,0 +1,68 @@
+package com.ka.identity_service.repository;
+
+import com.ka.identity_service.entity.User;
+import com.ka.identity_service.enums.VersionedCollection;
+import com.ka.identity_service.repository.projection.UserVersion;
+import com.ka.identity_service.service.CollectionVersions;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Test cho version dùng làm ETag trên H2: bộ đếm của từng tập (collection_version) và @Version của user.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(locations = "/test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:collection-versions;MODE=MYSQL;NON_KEYWORDS=USER",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+public class CollectionVersionRepositoryTest {
+
+    @Autowired
+    private CollectionVersionRepository collectionVersionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void bump_isCountedPerCollection() {
+        CollectionVersions collectionVersions = new CollectionVersions(collectionVersionRepository);
+        // Schema do Hibernate tạo nên chưa có dòng nào (migration V3 mới seed)
+        Assertions.assertThat(collectionVersions.etag(VersionedCollection.ROLES)).isEqualTo("W/\"roles-0\"");
+
+        collectionVersions.bump(VersionedCollection.ROLES);
+        collectionVersions.bump(VersionedCollection.ROLES, VersionedCollection.USERS);
+        entityManager.flush();
+        entityManager.clear();
+
+        Assertions.assertThat(collectionVersions.current(VersionedCollection.ROLES)).isEqualTo(2);
+        Assertions.assertThat(collectionVersions.current(VersionedCollection.USERS)).isEqualTo(1);
+        Assertions.assertThat(collectionVersions.etag(VersionedCollection.PERMISSIONS)).isEqualTo("W/\"permissions-0\"");
+    }
+
+    @Test
+    void userVersion_increasesOnUpdate() {
+        User user = entityManager.persistFlushFind(User.builder()
+                .username("john12")
+                .firstName("John")
+                .build());
+        Assertions.assertThat(userRepository.findVersionById(user.getId()))
+                .contains(new UserVersion("john12", 0L));
+
+        user.setFirstName("Johnny");
+        entityManager.flush();
+        entityManager.clear();
+
+        Assertions.assertThat(userRepository.findVersionById(user.getId()))
+                .contains(new UserVersion("john12", 1L));
+        Assertions.assertThat(userRepository.findVersionById("missing")).isEmpty();
+    }
+}
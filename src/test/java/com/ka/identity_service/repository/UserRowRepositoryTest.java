@@ -0,0 +1,94 @@
+package com.ka.identity_service.repository;
+
+import com.ka.identity_service.dto.request.UserField;
+import com.ka.identity_service.entity.User;
+import com.ka.identity_service.repository.projection.UserRow;
+import org.assertj.core.api.Assertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Test cho projection động của UserRepository (fields=...) trên H2.
+ * Câu SQL Hibernate sinh ra được ghi lại bằng StatementInspector để kiểm tra cột được select.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(locations = "/test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-rows;MODE=MYSQL;NON_KEYWORDS=USER",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.ka.identity_service.repository.UserRowRepositoryTest$SqlRecorder"
+})
+public class UserRowRepositoryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private String userId;
+
+    @BeforeEach
+    void initData() {
+        User user = entityManager.persistFlushFind(User.builder()
+                .username("john12")
+                .password("secret-hash")
+                .firstName("John")
+                .lastName("Doe")
+                .dob(LocalDate.of(1990, 1, 1))
+                .build());
+        userId = user.getId();
+        entityManager.clear();
+        SqlRecorder.STATEMENTS.clear();
+    }
+
+    @Test
+    void findRows_onlySelectsRequestedColumns() {
+        List<UserRow> rows = userRepository.findRows(UserField.attributes(UserField.parse("id,username")));
+
+        Assertions.assertThat(rows).containsExactly(new UserRow(userId, "john12", null, null, null));
+        String sql = selectClause(SqlRecorder.STATEMENTS.get(0));
+        Assertions.assertThat(sql).contains(".id", ".username");
+        Assertions.assertThat(sql).doesNotContain("first_name", "last_name", "dob", "password");
+    }
+
+    @Test
+    void findRow_byId_allFields_skipsUnusedColumns() {
+        UserRow row = userRepository.findRow(userId, UserField.attributes(UserField.ALL)).orElseThrow();
+
+        Assertions.assertThat(row).isEqualTo(new UserRow(userId, "john12", "John", null, LocalDate.of(1990, 1, 1)));
+        String sql = SqlRecorder.STATEMENTS.get(0).toLowerCase(Locale.ROOT);
+        Assertions.assertThat(selectClause(sql)).contains("first_name", "dob").doesNotContain("last_name", "password");
+        Assertions.assertThat(sql).contains("where");
+        Assertions.assertThat(userRepository.findRow("missing", List.of("id"))).isEmpty();
+    }
+
+    private static String selectClause(String sql) {
+        String lower = sql.toLowerCase(Locale.ROOT);
+        return lower.substring(0, lower.indexOf(" from "));
+    }
+
+    // Hibernate tạo instance qua constructor mặc định, nên danh sách câu lệnh để static
+    public static class SqlRecorder implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.toLowerCase(Locale.ROOT).startsWith("select"))
+                STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.ka.identity_service.service;
+
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test cho FastTokenVerifier (không cần Spring Context).
+ * So sánh kết quả với đường verify bằng Nimbus trên token hợp lệ, token do Nimbus ký và token bị sửa ngẫu nhiên.
+ */
+public class FastTokenVerifierTest {
+
+    private static final String SIGNER_KEY = "da71bbd42f53166b283fae318f1ab668822d1980543618f423d4b6d63ce9d5fb";
+    private static final String BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private SimpleMeterRegistry meterRegistry;
+    private FastTokenVerifier verifier;
+    private TokenMinter tokenMinter;
+    private long now;
+
+    @BeforeEach
+    void initData() {
+        meterRegistry = new SimpleMeterRegistry();
+        verifier = new FastTokenVerifier(SIGNER_KEY, meterRegistry);
+        tokenMinter = new TokenMinter(SIGNER_KEY);
+        now = Instant.now().getEpochSecond();
+    }
+
+    @Test
+    void verify_ownToken_fastPath() {
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("v", 1L);
+        profile.put("pv", 2L);
+        profile.put("firstName", "Nguyễn");
+        String token = tokenMinter.mint("john", now, now + 3600, 7L, "ROLE_USER APPROVE_POST", "Bw", profile);
+
+        TokenValidation validation = verifier.verify(token);
+
+        Assertions.assertThat(validation.verdict()).isEqualTo(TokenVerdict.VALID);
+        VerifiedToken claims = validation.claims();
+        Assertions.assertThat(claims.subject()).isEqualTo("john");
+        Assertions.assertThat(claims.issuer()).isEqualTo(TokenMinter.ISSUER);
+        Assertions.assertThat(claims.issueTime()).isEqualTo(now);
+        Assertions.assertThat(claims.expirationTime()).isEqualTo(now + 3600);
+        Assertions.assertThat(claims.tokenEpoch()).isEqualTo(7L);
+        Assertions.assertThat(claims.scope()).isEqualTo("ROLE_USER APPROVE_POST");
+        Assertions.assertThat(claims.perms()).isEqualTo("Bw");
+        Assertions.assertThat(claims.profile()).isEqualTo(profile);
+        Assertions.assertThat(validation).isEqualTo(verifier.nimbus(token));
+        Assertions.assertThat(count("fast")).isEqualTo(1);
+    }
+
+    @Test
+    void verify_unusualTokens_fallBackToNimbus() throws Exception {
+        // Header có typ, claim lạ, chuỗi có escape, HS256
+        String withType = nimbusToken(new JWSHeader.Builder(JWSAlgorithm.HS512).type(JOSEObjectType.JWT).build(),
+                claims().build());
+        String withExtraClaim = nimbusToken(new JWSHeader(JWSAlgorithm.HS512), claims().claim("aud", "gateway").build());
+        String withEscape = nimbusToken(new JWSHeader(JWSAlgorithm.HS512), claims().subject("jo\"hn").build());
+        String hs256 = nimbusToken(new JWSHeader(JWSAlgorithm.HS256), claims().build());
+
+        for (String token : List.of(withType, withExtraClaim, withEscape, hs256)) {
+            TokenValidation validation = verifier.verify(token);
+            Assertions.assertThat(validation.isValid()).isTrue();
+            Assertions.assertThat(validation).isEqualTo(verifier.nimbus(token));
+        }
+        Assertions.assertThat(verifier.verify(withEscape).claims().subject()).isEqualTo("jo\"hn");
+        Assertions.assertThat(count("fast")).isZero();
+    }
+
+    @Test
+    void verify_sameResultAsNimbus_forMutatedTokens() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        tokens.add(tokenMinter.mint("john", now, now + 3600, 0L, "ROLE_USER", null, null));
+        tokens.add(tokenMinter.mint("ka", now, now + 60, 0L, "", "Bw", Map.of("v", 1L, "id", "x")));
+        tokens.add(nimbusToken(new JWSHeader(JWSAlgorithm.HS512), claims().build()));
+        tokens.add(new TokenMinter("x".repeat(64)).mint("john", now, now + 3600, 0L, "ROLE_ADMIN", null, null));
+
+        Random random = new Random(42);
+        List<String> mutated = new ArrayList<>(tokens);
+        for (String token : tokens) {
+            for (int i = 0; i < 500; i++)
+                mutated.add(mutate(token, random));
+        }
+        mutated.addAll(List.of("", ".", "..", "a.b.c", "a.b.c.d", tokens.get(0) + "=", " " + tokens.get(0)));
+
+        Map<TokenVerdict, Integer> verdicts = new EnumMap<>(TokenVerdict.class);
+        for (String token : mutated) {
+            TokenValidation expected = verifier.nimbus(token);
+            Assertions.assertThat(verifier.verify(token)).as(token).isEqualTo(expected);
+            verdicts.merge(expected.verdict(), 1, Integer::sum);
+        }
+        // Token gốc + một số biến đổi không làm đổi byte (ví dụ bit thừa cuối base64) vẫn hợp lệ
+        Assertions.assertThat(verdicts.get(TokenVerdict.VALID)).isGreaterThanOrEqualTo(3);
+        Assertions.assertThat(verdicts).containsKeys(TokenVerdict.BAD_SIGNATURE, TokenVerdict.MALFORMED);
+    }
+
+    private String mutate(String token, Random random) {
+        StringBuilder builder = new StringBuilder(token);
+        int position = random.nextInt(token.length());
+        switch (random.nextInt(5)) {
+            case 0 -> builder.setCharAt(position, BASE64_URL.charAt(random.nextInt(BASE64_URL.length())));
+            case 1 -> builder.deleteCharAt(position);
+            case 2 -> builder.insert(position, '.');
+            case 3 -> builder.setLength(position);
+            default -> builder.setCharAt(position, (char) random.nextInt(0x100));
+        }
+        return builder.toString();
+    }
+
+    private JWTClaimsSet.Builder claims() {
+        return new JWTClaimsSet.Builder()
+                .subject("john")
+                .issuer(TokenMinter.ISSUER)
+                .issueTime(new Date(now * 1000))
+                .expirationTime(new Date((now + 3600) * 1000))
+                .jwtID("4055f7be-defd-4c5c-8195-ab7108ba1121")
+                .claim("scope", "ROLE_USER");
+    }
+
+    private static String nimbusToken(JWSHeader header, JWTClaimsSet claims) throws Exception {
+        JWSObject jwsObject = new JWSObject(header, new Payload(claims.toJSONObject()));
+        jwsObject.sign(new MACSigner(SIGNER_KEY.getBytes()));
+        return jwsObject.serialize();
+    }
+
+    private double count(String path) {
+        return meterRegistry.get("token.verify").tag("path", path).counter().count();
+    }
+}
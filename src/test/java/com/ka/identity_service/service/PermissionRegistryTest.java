@@ -0,0 +1,125 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.Permission;
+import com.ka.identity_service.enums.VersionedCollection;
+import com.ka.identity_service.repository.CollectionVersionRepository;
+import com.ka.identity_service.repository.IdSequenceRepository;
+import com.ka.identity_service.repository.PermissionRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+/**
+ * Test cho PermissionRegistry trên H2: cấp bitIndex không dùng lại, decode theo thay đổi ở instance khác.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(locations = "/test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:permission-registry;MODE=MYSQL;NON_KEYWORDS=USER",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+public class PermissionRegistryTest {
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    @Autowired
+    private IdSequenceRepository idSequenceRepository;
+
+    @Autowired
+    private CollectionVersionRepository collectionVersionRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private CollectionVersions collectionVersions;
+    private PermissionRepository countingRepository;
+    private PermissionRegistry permissionRegistry;
+
+    @BeforeEach
+    void initData() {
+        collectionVersions = new CollectionVersions(collectionVersionRepository);
+        // Đếm số lần registry load lại (findAll)
+        countingRepository = Mockito.mock(PermissionRepository.class, AdditionalAnswers.delegatesTo(permissionRepository));
+        permissionRegistry = new PermissionRegistry(countingRepository, idSequenceRepository, collectionVersions);
+    }
+
+    @Test
+    void assignIndex_neverReusesIndexOfDeletedPermission() {
+        Permission read = create("READ");
+        Permission write = create("WRITE");
+        Assertions.assertThat(List.of(read.getBitIndex(), write.getBitIndex())).containsExactly(0, 1);
+
+        // WRITE đang có index lớn nhất, xóa đi rồi tạo permission mới: không được nhận lại index 1
+        permissionRepository.delete(write);
+        entityManager.flush();
+        Permission delete = create("DELETE");
+
+        Assertions.assertThat(delete.getBitIndex()).isEqualTo(2);
+        Assertions.assertThat(permissionRegistry.decode(permissionRegistry.encode(List.of(0, 1, 2))))
+                .containsExactly("READ", "DELETE");
+    }
+
+    @Test
+    void decode_reloadsAfterChangeOnAnotherInstance_withoutWriting() {
+        create("READ");
+        create("WRITE");
+        String bits = permissionRegistry.encode(List.of(0, 1));
+        Assertions.assertThat(permissionRegistry.decode(bits)).containsExactly("READ", "WRITE");
+        int generation = permissionRegistry.generation();
+
+        // Không có gì đổi → không load lại
+        permissionRegistry.refreshIfChanged();
+        Assertions.assertThat(permissionRegistry.generation()).isEqualTo(generation);
+
+        // Instance khác xóa WRITE, thêm permission cũ chưa có bitIndex và tăng version của tập permissions
+        permissionRepository.deleteById("WRITE");
+        permissionRepository.save(Permission.builder().name("LEGACY").build());
+        collectionVersions.bump(VersionedCollection.PERMISSIONS);
+        entityManager.flush();
+        entityManager.clear();
+
+        permissionRegistry.refreshIfChanged();
+        Assertions.assertThat(permissionRegistry.decode(bits)).containsExactly("READ");
+        // Decode không tự đánh số permission thiếu bitIndex
+        Assertions.assertThat(permissionRepository.findById("LEGACY").orElseThrow().getBitIndex()).isNull();
+    }
+
+    @Test
+    void decode_bitOfDeletedTopPermission_reloadsOnce() {
+        create("READ");
+        Permission write = create("WRITE");
+        String bits = permissionRegistry.encode(List.of(0, 1));
+        Assertions.assertThat(permissionRegistry.decode(bits)).containsExactly("READ", "WRITE");
+
+        // Xóa permission có index lớn nhất, token cũ vẫn mang bit 1
+        permissionRepository.delete(write);
+        collectionVersions.bump(VersionedCollection.PERMISSIONS);
+        entityManager.flush();
+        permissionRegistry.invalidate();
+        Mockito.clearInvocations(countingRepository);
+
+        Assertions.assertThat(permissionRegistry.decode(bits)).containsExactly("READ");
+        int generation = permissionRegistry.generation();
+        Assertions.assertThat(permissionRegistry.decode(bits)).containsExactly("READ");
+
+        // Bit 1 đã được cấp nên được coi là đã xóa: không load lại ở lần decode sau
+        Mockito.verify(countingRepository, Mockito.times(1)).findAll();
+        Assertions.assertThat(permissionRegistry.generation()).isEqualTo(generation);
+    }
+
+    private Permission create(String name) {
+        Permission permission = Permission.builder().name(name).build();
+        permissionRegistry.assignIndex(permission);
+        return entityManager.persistFlushFind(permission);
+    }
+}
@@ -0,0 +1,95 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.dto.response.RoleResponse;
+import com.ka.identity_service.entity.Role;
+import com.ka.identity_service.entity.User;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Test cho ProfileClaims (không cần Spring Context).
+ */
+public class ProfileClaimsTest {
+
+    private TokenEpochRegistry tokenEpochRegistry;
+    private ProfileClaims profileClaims;
+    private User user;
+
+    @BeforeEach
+    void initData() {
+        tokenEpochRegistry = Mockito.mock(TokenEpochRegistry.class);
+        profileClaims = new ProfileClaims(tokenEpochRegistry, true, 512);
+        user = User.builder()
+                .id("4055f7be-defd-4c5c-8195-ab7108ba1121")
+                .username("john12")
+                .firstName("john")
+                .lastName("Doe")
+                .dob(LocalDate.of(1990, 1, 1))
+                .profileVersion(3L)
+                .roles(Set.of(Role.builder().name("USER").build(), Role.builder().name("ADMIN").build()))
+                .build();
+    }
+
+    @Test
+    void read_currentVersion_servedFromToken() {
+        when(tokenEpochRegistry.profileVersion("john12")).thenReturn(3L);
+
+        var response = profileClaims.read(jwt(profileClaims.build(user)), ProfileClaimsTest::resolve);
+
+        Assertions.assertThat(response).isNotNull();
+        Assertions.assertThat(response.getId()).isEqualTo(user.getId());
+        Assertions.assertThat(response.getUsername()).isEqualTo("john12");
+        Assertions.assertThat(response.getDob()).isEqualTo(user.getDob());
+        Assertions.assertThat(response.getRoles()).extracting(RoleResponse::getName)
+                .containsExactly("ADMIN", "USER");
+    }
+
+    @Test
+    void read_unknownRole_fallsBackToDatabase() {
+        when(tokenEpochRegistry.profileVersion("john12")).thenReturn(3L);
+
+        // Role trong token đã bị xóa
+        Assertions.assertThat(profileClaims.read(jwt(profileClaims.build(user)), names -> null)).isNull();
+    }
+
+    @Test
+    void read_staleVersion_fallsBackToDatabase() {
+        // Profile đã được cập nhật sau khi token được cấp
+        when(tokenEpochRegistry.profileVersion("john12")).thenReturn(4L);
+
+        Assertions.assertThat(profileClaims.read(jwt(profileClaims.build(user)), ProfileClaimsTest::resolve)).isNull();
+    }
+
+    @Test
+    void build_overSizeCap_omitted() {
+        user.setFirstName("x".repeat(600));
+
+        Assertions.assertThat(profileClaims.build(user)).isNull();
+    }
+
+    private static Set<RoleResponse> resolve(List<String> names) {
+        return names.stream()
+                .map(name -> RoleResponse.builder().name(name).permissions(Set.of()).build())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private static Jwt jwt(Map<String, Object> profile) {
+        return Jwt.withTokenValue("token")
+                .header("alg", "HS512")
+                .subject("john12")
+                .claim(ProfileClaims.PROFILE_CLAIM, profile)
+                .build();
+    }
+}
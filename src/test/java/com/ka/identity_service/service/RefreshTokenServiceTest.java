@@ -0,0 +1,66 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.RefreshToken;
+import com.ka.identity_service.repository.RefreshTokenRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Date;
+
+/**
+ * Test cho việc dọn bảng refresh_token của RefreshTokenService trên H2.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(locations = "/test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:refresh-tokens;MODE=MYSQL;NON_KEYWORDS=USER",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+public class RefreshTokenServiceTest {
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private RefreshTokenService refreshTokenService;
+
+    @BeforeEach
+    void initData() {
+        refreshTokenService = new RefreshTokenService(refreshTokenRepository);
+        refreshTokenService.REFRESHABLE_DURATION = 3600;
+        refreshTokenService.PURGE_BATCH_SIZE = 2;
+    }
+
+    @Test
+    void purge_removesExpiredAndRevoked_keepsRotatedTokensOfLiveFamily() {
+        // Phiên còn hạn, đã rotate một lần: token cũ (used) phải được giữ để phát hiện dùng lại
+        String first = refreshTokenService.issue("john");
+        String second = refreshTokenService.rotate(first).orElseThrow().refreshToken();
+        // Phiên đã logout
+        refreshTokenService.revoke(refreshTokenService.issue("john"));
+        // Phiên đã hết hạn
+        Date expired = new Date(System.currentTimeMillis() - 1000);
+        for (int i = 0; i < 3; i++)
+            refreshTokenRepository.save(RefreshToken.builder()
+                    .id("expired-" + i).familyId("old").username("jane").expiryTime(expired).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        Assertions.assertThat(refreshTokenService.purge()).isEqualTo(4);
+        entityManager.clear();
+
+        Assertions.assertThat(refreshTokenRepository.findAll()).extracting(RefreshToken::getId)
+                .containsExactlyInAnyOrder(RefreshTokenService.hash(first), RefreshTokenService.hash(second));
+        // Token đã rotate bị dùng lại vẫn bị phát hiện → cả phiên bị thu hồi
+        Assertions.assertThat(refreshTokenService.rotate(first)).isEmpty();
+        Assertions.assertThat(refreshTokenService.rotate(second)).isEmpty();
+    }
+}
@@ -0,0 +1,157 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.User;
+import com.ka.identity_service.repository.RefreshTokenRepository;
+import com.ka.identity_service.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test cho TokenEpochRegistry trên H2 qua Hibernate, RevocationLookup đọc DB ở thread riêng
+ * nên dữ liệu được commit thật (không chạy trong transaction của test).
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(locations = "/test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:token-epochs;MODE=MYSQL;NON_KEYWORDS=USER",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class TokenEpochRegistryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private RevocationLookup revocationLookup;
+    private TokenEpochRegistry tokenEpochRegistry;
+
+    @BeforeEach
+    void initData() {
+        revocationLookup = new RevocationLookup(transactionManager, new SimpleMeterRegistry(),
+                Duration.ofMillis(500), 2, 5, Duration.ofSeconds(5), Duration.ofSeconds(30));
+        tokenEpochRegistry = new TokenEpochRegistry(userRepository, refreshTokenRepository, revocationLookup);
+        tokenEpochRegistry.CACHE_TTL = 60;
+        tokenEpochRegistry.CACHE_SIZE = 100;
+    }
+
+    @AfterEach
+    void clear() {
+        revocationLookup.shutdown();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void revokeAll_rejectsTokenIssuedInSameSecond() {
+        userRepository.save(User.builder().username("john12").build());
+        long now = Instant.now().getEpochSecond();
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, 0L)).isFalse();
+
+        tokenEpochRegistry.revokeAll("john12");
+
+        // Token cấp ngay trước lúc thu hồi, cùng giây → vẫn bị từ chối
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, 0L)).isTrue();
+        // Token cũ chưa có claim tep: so theo iat như trước
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now - 1, null)).isTrue();
+        // Token cấp sau khi thu hồi mang epoch mới
+        long epoch = currentEpoch("john12");
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, epoch)).isFalse();
+
+        // Thu hồi lần nữa trong cùng giây vẫn tăng epoch
+        tokenEpochRegistry.revokeAll("john12");
+        Assertions.assertThat(currentEpoch("john12")).isEqualTo(epoch + 1);
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, epoch)).isTrue();
+    }
+
+    @Test
+    void revokeAll_inRolledBackTransaction_keepsTokensValid() {
+        userRepository.save(User.builder().username("john12").build());
+        long now = Instant.now().getEpochSecond();
+        long epoch = currentEpoch("john12");
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, epoch)).isFalse();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // Ví dụ updateUser bị rollback (xung đột @Version): DB không đổi, cache cũng không
+        transactionTemplate.executeWithoutResult(status -> {
+            tokenEpochRegistry.profileChanged("john12", 5);
+            tokenEpochRegistry.revokeAll("john12");
+            status.setRollbackOnly();
+        });
+        Assertions.assertThat(currentEpoch("john12")).isEqualTo(epoch);
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, epoch)).isFalse();
+        Assertions.assertThat(tokenEpochRegistry.profileVersion("john12")).isZero();
+
+        // Commit → cache được cập nhật sau khi commit
+        transactionTemplate.executeWithoutResult(status -> tokenEpochRegistry.revokeAll("john12"));
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, epoch)).isTrue();
+    }
+
+    @Test
+    void userCreated_evictsDeletedEntry() {
+        long now = Instant.now().getEpochSecond();
+        User user = userRepository.save(User.builder().username("john12").build());
+        userRepository.delete(user);
+        tokenEpochRegistry.markDeleted("john12");
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, 0L)).isTrue();
+
+        // Tạo lại user cùng username: token mới không bị coi là của user đã xóa
+        userRepository.save(User.builder().username("john12").build());
+        tokenEpochRegistry.userCreated("john12");
+
+        Assertions.assertThat(tokenEpochRegistry.isRevoked("john12", now, 0L)).isFalse();
+    }
+
+    @Test
+    void lookupFails_staleEntryWhileFailOpen_thenRejects() {
+        userRepository.save(User.builder().username("john12").build());
+        RevocationLookup failing = Mockito.mock(RevocationLookup.class);
+        when(failing.query(any())).thenReturn(Optional.empty());
+        when(failing.failOpen()).thenReturn(true);
+        TokenEpochRegistry registry = new TokenEpochRegistry(userRepository, refreshTokenRepository, failing);
+        // Entry luôn hết hạn → lần kiểm tra nào cũng thử load lại từ DB
+        registry.CACHE_TTL = 0;
+        registry.CACHE_SIZE = 100;
+        long now = Instant.now().getEpochSecond();
+
+        // Chưa biết gì về user: fail-open coi như chưa thu hồi
+        Assertions.assertThat(registry.isRevoked("john12", now, 0L)).isFalse();
+
+        // Đã biết epoch (thu hồi trên instance này): DB lỗi vẫn dùng entry cũ
+        registry.revokeAll("john12");
+        Assertions.assertThat(registry.isRevoked("john12", now, 0L)).isTrue();
+        Assertions.assertThat(registry.isRevoked("john12", now, currentEpoch("john12"))).isFalse();
+
+        // Hết thời gian fail-open: mọi token của user bị từ chối
+        when(failing.failOpen()).thenReturn(false);
+        Assertions.assertThat(registry.isRevoked("john12", now, currentEpoch("john12"))).isTrue();
+        Assertions.assertThat(registry.isRevoked("other", now, 0L)).isTrue();
+    }
+
+    private long currentEpoch(String username) {
+        return userRepository.findTokenState(username).orElseThrow().tokensValidAfter();
+    }
+}
@@ -0,0 +1,100 @@
+package com.ka.identity_service.service;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jwt.SignedJWT;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Test cho TokenMinter (không cần Spring Context): token phải verify / parse được bằng Nimbus.
+ */
+public class TokenMinterTest {
+
+    private static final String SIGNER_KEY = "da71bbd42f53166b283fae318f1ab668822d1980543618f423d4b6d63ce9d5fb";
+
+    private final TokenMinter tokenMinter = new TokenMinter(SIGNER_KEY);
+
+    @Test
+    void mint_verifiedAndParsedByNimbus() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        String token = tokenMinter.mint("john", now, now + 3600, 0L, "ROLE_USER APPROVE_POST", null, null);
+
+        SignedJWT signedJWT = SignedJWT.parse(token);
+        Assertions.assertThat(signedJWT.getHeader().getAlgorithm()).isEqualTo(JWSAlgorithm.HS512);
+        Assertions.assertThat(signedJWT.verify(new MACVerifier(SIGNER_KEY.getBytes()))).isTrue();
+
+        var claims = signedJWT.getJWTClaimsSet();
+        Assertions.assertThat(claims.getSubject()).isEqualTo("john");
+        Assertions.assertThat(claims.getIssuer()).isEqualTo(TokenMinter.ISSUER);
+        Assertions.assertThat(claims.getIssueTime().toInstant().getEpochSecond()).isEqualTo(now);
+        Assertions.assertThat(claims.getExpirationTime().toInstant().getEpochSecond()).isEqualTo(now + 3600);
+        Assertions.assertThat(claims.getStringClaim("scope")).isEqualTo("ROLE_USER APPROVE_POST");
+        Assertions.assertThat(claims.getClaim("perms")).isNull();
+        Assertions.assertThat(claims.getLongClaim("tep")).isZero();
+        Assertions.assertThat(UUID.fromString(claims.getJWTID()).version()).isEqualTo(4);
+
+        // Decoder mà Spring Security dùng (CustomJwtDecoder)
+        var jwt = NimbusJwtDecoder.withSecretKey(new SecretKeySpec(SIGNER_KEY.getBytes(), "HS512"))
+                .macAlgorithm(MacAlgorithm.HS512)
+                .build()
+                .decode(token);
+        Assertions.assertThat(jwt.getSubject()).isEqualTo("john");
+        Assertions.assertThat(jwt.getClaimAsString("scope")).isEqualTo("ROLE_USER APPROVE_POST");
+    }
+
+    @Test
+    void mint_escapesAndEncodesUtf8_withPermsAndProfile() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("v", 1L);
+        profile.put("pv", 7L);
+        profile.put("id", "4055f7be-defd-4c5c-8195-ab7108ba1121");
+        profile.put("firstName", "Nguyễn \"Ka\" \\ \n\t😀");
+        profile.put("lastName", null);
+
+        String token = tokenMinter.mint("ka\u0001", now, now + 60, null, "", "Bw", profile);
+
+        SignedJWT signedJWT = SignedJWT.parse(token);
+        Assertions.assertThat(signedJWT.verify(new MACVerifier(SIGNER_KEY.getBytes()))).isTrue();
+
+        var claims = signedJWT.getJWTClaimsSet();
+        Assertions.assertThat(claims.getSubject()).isEqualTo("ka\u0001");
+        Assertions.assertThat(claims.getStringClaim("scope")).isEmpty();
+        Assertions.assertThat(claims.getStringClaim("perms")).isEqualTo("Bw");
+        Assertions.assertThat(claims.getClaim("tep")).isNull();
+        var parsedProfile = claims.getJSONObjectClaim("profile");
+        Assertions.assertThat(parsedProfile.get("firstName")).isEqualTo("Nguyễn \"Ka\" \\ \n\t😀");
+        Assertions.assertThat(((Number) parsedProfile.get("pv")).longValue()).isEqualTo(7L);
+        Assertions.assertThat(parsedProfile).doesNotContainKey("lastName");
+    }
+
+    @Test
+    void mint_wrongKey_rejectedByNimbus() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        String token = new TokenMinter("x".repeat(64)).mint("john", now, now + 60, 0L, "", null, null);
+
+        Assertions.assertThat(SignedJWT.parse(token).verify(new MACVerifier(SIGNER_KEY.getBytes()))).isFalse();
+    }
+
+    @Test
+    void newJwtId_uniqueUuids() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++)
+            ids.add(TokenMinter.newJwtId());
+
+        Assertions.assertThat(ids).hasSize(10_000);
+        Assertions.assertThat(ids).allSatisfy(id -> Assertions.assertThat(UUID.fromString(id).toString()).isEqualTo(id));
+    }
+}
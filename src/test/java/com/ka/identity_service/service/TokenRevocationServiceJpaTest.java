@@ -0,0 +1,114 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.entity.InvalidatedToken;
+import com.ka.identity_service.repository.InvalidatedTokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Test cho TokenRevocationService trên Hibernate + H2 thật (JpaTransactionManager, repository JPA).
+ * Các lần ghi / đọc DB được commit thật nên test không chạy trong transaction.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(locations = "/test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:revocation-jpa;MODE=MYSQL;NON_KEYWORDS=USER",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class TokenRevocationServiceJpaTest {
+
+    @Autowired
+    private InvalidatedTokenRepository invalidatedTokenRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RevocationLookup revocationLookup;
+    private TokenRevocationService tokenRevocationService;
+
+    @BeforeEach
+    void initData() {
+        meterRegistry = new SimpleMeterRegistry();
+        // Timeout dưới 1 giây giống mặc định (jwt.revocation.lookup.timeout: 200ms),
+        // nới ra một chút để query đầu tiên (Hibernate còn nguội) không bị tính là quá hạn
+        revocationLookup = new RevocationLookup(transactionManager, meterRegistry,
+                Duration.ofMillis(900), 2, 5, Duration.ofSeconds(5), Duration.ofSeconds(30));
+        tokenRevocationService = new TokenRevocationService(invalidatedTokenRepository,
+                new TransactionTemplate(transactionManager), revocationLookup, meterRegistry, 100, 10000, 3600);
+    }
+
+    @AfterEach
+    void clear() {
+        revocationLookup.shutdown();
+        invalidatedTokenRepository.deleteAll();
+    }
+
+    @Test
+    void isRevoked_readsThroughHibernate_withSubSecondTimeout() {
+        invalidatedTokenRepository.save(InvalidatedToken.builder()
+                .id("db-revoked")
+                .expiryTime(new Date(System.currentTimeMillis() + 60_000))
+                .build());
+
+        // Hibernate làm tròn xuống số giây còn lại của transaction timeout:
+        // nếu RevocationLookup đặt timeout theo đúng 900ms (0 giây), mọi query bị coi là hết hạn và rơi vào fallback
+        Assertions.assertThat(tokenRevocationService.isRevoked("db-revoked")).isTrue();
+        Assertions.assertThat(tokenRevocationService.isRevoked("fresh")).isFalse();
+        Assertions.assertThat(tokenRevocationService.revokedAmong(List.of("fresh", "db-revoked")))
+                .containsExactly("db-revoked");
+        Assertions.assertThat(meterRegistry.get("token.revocation.lookup").tag("outcome", "ok").counter().count())
+                .isEqualTo(3);
+    }
+
+    @Test
+    void flush_skipsAlreadyPersistedJti_withoutBlockingBatch() {
+        Date expiryTime = new Date(System.currentTimeMillis() + 60_000);
+        // jti đã được instance khác ghi xuống DB
+        invalidatedTokenRepository.save(InvalidatedToken.builder().id("dup").expiryTime(expiryTime).build());
+
+        tokenRevocationService.revoke("first", expiryTime);
+        tokenRevocationService.revoke("dup", expiryTime);
+        tokenRevocationService.revoke("last", expiryTime);
+        tokenRevocationService.flush();
+
+        Assertions.assertThat(tokenRevocationService.getQueueDepth()).isZero();
+        Assertions.assertThat(invalidatedTokenRepository.findAll()).extracting(InvalidatedToken::getId)
+                .containsExactlyInAnyOrder("first", "dup", "last");
+        Assertions.assertThat(meterRegistry.get("token.revocation.flushed").counter().count()).isEqualTo(2);
+        Assertions.assertThat(meterRegistry.get("token.revocation.flush.failures").counter().count()).isZero();
+    }
+
+    @Test
+    void purgeExpired_runsWhileQueueIsEmpty() throws Exception {
+        tokenRevocationService.revoke("short-lived", new Date(System.currentTimeMillis() + 50));
+        tokenRevocationService.flush();
+        Thread.sleep(100);
+
+        // Hàng đợi rỗng, flush() không làm gì; view vẫn được dọn
+        tokenRevocationService.flush();
+        Assertions.assertThat(viewSize()).isEqualTo(1);
+        tokenRevocationService.purgeExpired();
+        Assertions.assertThat(viewSize()).isZero();
+    }
+
+    private double viewSize() {
+        return meterRegistry.get("token.revocation.view.size").gauge().value();
+    }
+}
@@ -0,0 +1,178 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.repository.InvalidatedTokenRepository;
+import com.ka.identity_service.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test cho TokenRevocationService khi DB chậm / sập (không cần Spring Context).
+ * Repository đọc database H2 qua FaultyDataSource: DataSource giả lập độ trễ và lỗi khi lấy connection.
+ */
+public class TokenRevocationServiceTest {
+
+    private FaultyDataSource dataSource;
+    private SimpleMeterRegistry meterRegistry;
+    private RevocationLookup revocationLookup;
+    private TokenRevocationService tokenRevocationService;
+
+    @BeforeEach
+    void initData() {
+        DriverManagerDataSource h2 = new DriverManagerDataSource("jdbc:h2:mem:revocation;DB_CLOSE_DELAY=-1", "sa", "sa");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(h2);
+        jdbcTemplate.execute("drop table if exists invalidated_token");
+        jdbcTemplate.execute("create table invalidated_token (id varchar(64) primary key, expiry_time timestamp)");
+        jdbcTemplate.update("insert into invalidated_token values ('db-revoked', current_timestamp)");
+        dataSource = new FaultyDataSource(h2);
+    }
+
+    @AfterEach
+    void clear() {
+        revocationLookup.shutdown();
+    }
+
+    @Test
+    void healthyDatabase_readsDatabase() {
+        initService(Duration.ofSeconds(30));
+
+        Assertions.assertThat(tokenRevocationService.isRevoked("db-revoked")).isTrue();
+        Assertions.assertThat(tokenRevocationService.isRevoked("fresh")).isFalse();
+        Assertions.assertThat(tokenRevocationService.revokedAmong(List.of("fresh", "other", "db-revoked")))
+                .containsExactly("db-revoked");
+        Assertions.assertThat(count("token.revocation.lookup", "outcome", "ok")).isEqualTo(3);
+    }
+
+    @Test
+    void slowDatabase_timesOutThenShortCircuits() {
+        initService(Duration.ofSeconds(30));
+        dataSource.latencyMillis = 10_000;
+
+        // Mỗi lần chỉ chờ tối đa timeout (1s), token được chấp nhận vì đang trong fail-open
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            Assertions.assertThat(tokenRevocationService.isRevoked("fresh")).isFalse();
+            Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(3));
+        }
+        Assertions.assertThat(revocationLookup.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        // Breaker mở: không chạm tới DB nữa
+        int connections = dataSource.connections.get();
+        Assertions.assertThat(tokenRevocationService.isRevoked("fresh")).isFalse();
+        Assertions.assertThat(tokenRevocationService.revokedAmong(List.of("fresh"))).isEmpty();
+        Assertions.assertThat(dataSource.connections.get()).isEqualTo(connections);
+
+        Assertions.assertThat(count("token.revocation.lookup", "outcome", "timeout")).isEqualTo(3);
+        Assertions.assertThat(count("token.revocation.lookup", "outcome", "short_circuited")).isEqualTo(2);
+        Assertions.assertThat(count("token.revocation.fallback", "decision", "allow")).isEqualTo(5);
+    }
+
+    @Test
+    void databaseDown_knownStateThenFailClosed_thenRecovers() throws Exception {
+        initService(Duration.ofMillis(500));
+        // Đã biết từ DB trước sự cố, và thu hồi trên chính instance này
+        Assertions.assertThat(tokenRevocationService.isRevoked("db-revoked")).isTrue();
+        tokenRevocationService.revoke("local", new Date(System.currentTimeMillis() + 60_000));
+
+        dataSource.failing = true;
+        for (int i = 0; i < 3; i++)
+            Assertions.assertThat(tokenRevocationService.isRevoked("fresh")).isFalse();
+        Assertions.assertThat(revocationLookup.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        // Trạng thái trong bộ nhớ vẫn được áp dụng
+        Assertions.assertThat(tokenRevocationService.isRevoked("db-revoked")).isTrue();
+        Assertions.assertThat(tokenRevocationService.isRevoked("local")).isTrue();
+
+        // Quá fail-open-for: token chưa biết bị từ chối
+        Thread.sleep(600);
+        Assertions.assertThat(tokenRevocationService.isRevoked("fresh")).isTrue();
+        Assertions.assertThat(tokenRevocationService.revokedAmong(List.of("fresh", "other")))
+                .containsExactlyInAnyOrder("fresh", "other");
+        Assertions.assertThat(count("token.revocation.lookup", "outcome", "error")).isEqualTo(4);
+        Assertions.assertThat(count("token.revocation.fallback", "decision", "deny")).isEqualTo(2);
+
+        // DB sống lại: sau open-duration lời gọi thử thành công và breaker đóng
+        dataSource.failing = false;
+        Thread.sleep(250);
+        Assertions.assertThat(tokenRevocationService.isRevoked("fresh")).isFalse();
+        Assertions.assertThat(revocationLookup.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private void initService(Duration failOpenFor) {
+        meterRegistry = new SimpleMeterRegistry();
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        revocationLookup = new RevocationLookup(transactionManager, meterRegistry,
+                Duration.ofSeconds(1), 4, 3, Duration.ofMillis(200), failOpenFor);
+        tokenRevocationService = new TokenRevocationService(repository(), new TransactionTemplate(transactionManager),
+                revocationLookup, meterRegistry, 100, 10000, 3600);
+    }
+
+    // Repository đọc thẳng bảng invalidated_token bằng JDBC, đi qua FaultyDataSource
+    @SuppressWarnings("unchecked")
+    private InvalidatedTokenRepository repository() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        InvalidatedTokenRepository repository = Mockito.mock(InvalidatedTokenRepository.class);
+        when(repository.existsById(anyString())).thenAnswer(invocation -> jdbcTemplate.queryForObject(
+                "select count(*) from invalidated_token where id = ?", Integer.class,
+                invocation.getArgument(0, String.class)) > 0);
+        when(repository.findExistingIds(any())).thenAnswer(invocation -> new HashSet<>(namedJdbcTemplate.queryForList(
+                "select id from invalidated_token where id in (:ids)",
+                Map.of("ids", invocation.getArgument(0, Collection.class)), String.class)));
+        return repository;
+    }
+
+    private double count(String name, String tag, String value) {
+        return meterRegistry.get(name).tag(tag, value).counter().count();
+    }
+
+    // DataSource giả lập DB chậm (latencyMillis) hoặc sập (failing)
+    static class FaultyDataSource extends DelegatingDataSource {
+        volatile long latencyMillis;
+        volatile boolean failing;
+        final AtomicInteger connections = new AtomicInteger();
+
+        FaultyDataSource(DriverManagerDataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            connections.incrementAndGet();
+            if (failing)
+                throw new SQLException("database is down");
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("interrupted while connecting", e);
+                }
+            }
+            return super.getConnection();
+        }
+    }
+}
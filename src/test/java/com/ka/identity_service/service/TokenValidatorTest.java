@@ -0,0 +1,82 @@
+package com.ka.identity_service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Instant;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test cho TokenValidator (không cần Spring Context).
+ */
+public class TokenValidatorTest {
+
+    private static final String SIGNER_KEY = "da71bbd42f53166b283fae318f1ab668822d1980543618f423d4b6d63ce9d5fb";
+
+    private TokenEpochRegistry tokenEpochRegistry;
+    private TokenRevocationService tokenRevocationService;
+    private SimpleMeterRegistry meterRegistry;
+    private TokenValidator tokenValidator;
+    private TokenMinter tokenMinter;
+    private long now;
+
+    @BeforeEach
+    void initData() {
+        tokenEpochRegistry = Mockito.mock(TokenEpochRegistry.class);
+        tokenRevocationService = Mockito.mock(TokenRevocationService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        tokenValidator = new TokenValidator(new FastTokenVerifier(SIGNER_KEY, meterRegistry),
+                tokenEpochRegistry, tokenRevocationService, meterRegistry);
+        tokenMinter = new TokenMinter(SIGNER_KEY);
+        now = Instant.now().getEpochSecond();
+    }
+
+    @Test
+    void validate_verdicts() {
+        String valid = tokenMinter.mint("john", now, now + 60, 0L, "ROLE_USER", null, null);
+        String expired = tokenMinter.mint("john", now - 120, now - 60, 0L, "ROLE_USER", null, null);
+        String badSignature = new TokenMinter("x".repeat(64)).mint("john", now, now + 60, 0L, "ROLE_USER", null, null);
+
+        TokenValidation validation = tokenValidator.validate(valid);
+        Assertions.assertThat(validation.verdict()).isEqualTo(TokenVerdict.VALID);
+        Assertions.assertThat(validation.claims().subject()).isEqualTo("john");
+
+        Assertions.assertThat(tokenValidator.validate(expired).verdict()).isEqualTo(TokenVerdict.EXPIRED);
+        Assertions.assertThat(tokenValidator.validate(badSignature).verdict()).isEqualTo(TokenVerdict.BAD_SIGNATURE);
+        Assertions.assertThat(tokenValidator.validate("not-a-token").verdict()).isEqualTo(TokenVerdict.MALFORMED);
+        Assertions.assertThat(tokenValidator.validate(null).verdict()).isEqualTo(TokenVerdict.MALFORMED);
+
+        // Mỗi verdict được đếm riêng
+        Assertions.assertThat(count(TokenVerdict.VALID)).isEqualTo(1);
+        Assertions.assertThat(count(TokenVerdict.EXPIRED)).isEqualTo(1);
+        Assertions.assertThat(count(TokenVerdict.BAD_SIGNATURE)).isEqualTo(1);
+        Assertions.assertThat(count(TokenVerdict.MALFORMED)).isEqualTo(2);
+    }
+
+    @Test
+    void validate_revoked() {
+        String token = tokenMinter.mint("john", now, now + 60, 0L, "ROLE_USER", null, null);
+
+        // jti trong blacklist
+        when(tokenRevocationService.isRevoked(anyString())).thenReturn(true);
+        Assertions.assertThat(tokenValidator.validate(token).verdict()).isEqualTo(TokenVerdict.REVOKED);
+
+        // Logout mọi thiết bị sau khi token được cấp
+        when(tokenRevocationService.isRevoked(anyString())).thenReturn(false);
+        when(tokenEpochRegistry.isRevoked(any(), anyLong(), anyLong())).thenReturn(true);
+        Assertions.assertThat(tokenValidator.validate(token).verdict()).isEqualTo(TokenVerdict.REVOKED);
+
+        Assertions.assertThat(count(TokenVerdict.REVOKED)).isEqualTo(2);
+    }
+
+    private double count(TokenVerdict verdict) {
+        return meterRegistry.get("token.validation").tag("verdict", verdict.name()).counter().count();
+    }
+}
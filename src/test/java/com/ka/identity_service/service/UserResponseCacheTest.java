@@ -0,0 +1,141 @@
+package com.ka.identity_service.service;
+
+import com.ka.identity_service.dto.response.PermissionResponse;
+import com.ka.identity_service.dto.response.RoleResponse;
+import com.ka.identity_service.dto.response.UserResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Test cho UserResponseCache (không cần Spring Context).
+ */
+public class UserResponseCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserResponseCache cache;
+    private UserResponse user;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void initData() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new UserResponseCache(meterRegistry, Duration.ofMinutes(1), 100);
+        loads = new AtomicInteger();
+
+        var permission = PermissionResponse.builder().name("APPROVE_POST").build();
+        var role = RoleResponse.builder().name("ADMIN").permissions(Set.of(permission)).build();
+        user = UserResponse.builder()
+                .id("4055f7be-defd-4c5c-8195-ab7108ba1121")
+                .username("john12")
+                .roles(Set.of(role))
+                .build();
+    }
+
+    @Test
+    void get_cachedByUsernameAndId() {
+        cache.getByUsername("john12", this::load);
+
+        // Load theo username rồi đọc theo id → vẫn hit
+        Assertions.assertThat(cache.getById(user.getId(), this::load)).isSameAs(user);
+        Assertions.assertThat(loads.get()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.get("user.cache.requests").tag("result", "hit").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void evict_byUserRoleAndPermission_reloads() {
+        cache.getByUsername("john12", this::load);
+        cache.evictUser(user.getId(), user.getUsername());
+        cache.getByUsername("john12", this::load);
+
+        // Role / permission không liên quan → vẫn giữ
+        cache.evictByRole("USER");
+        cache.evictByPermission("DELETE_POST");
+        cache.getByUsername("john12", this::load);
+        Assertions.assertThat(loads.get()).isEqualTo(2);
+
+        cache.evictByRole("ADMIN");
+        cache.getByUsername("john12", this::load);
+        cache.evictByPermission("APPROVE_POST");
+        cache.getById(user.getId(), this::load);
+        Assertions.assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    void evictIfStale_versionChanged_reloads() {
+        cache.getById(user.getId(), this::load);
+
+        // Cùng version với DB → giữ entry
+        cache.evictIfStale(user.getId(), 1L);
+        cache.getByUsername("john12", this::load);
+        Assertions.assertThat(loads.get()).isEqualTo(1);
+
+        // User được update ở instance khác: DB đã ở version 2, entry còn TTL nhưng bị bỏ
+        cache.evictIfStale(user.getId(), 2L);
+        cache.getById(user.getId(), this::load);
+        Assertions.assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void getRoles_loadsMissingOnly_evictedWithPermission() {
+        var admin = user.getRoles().iterator().next();
+        var userRole = RoleResponse.builder().name("USER").permissions(Set.of()).build();
+        List<Collection<String>> requested = new ArrayList<>();
+        Function<Collection<String>, Collection<RoleResponse>> loader = names -> {
+            requested.add(List.copyOf(names));
+            return Stream.of(admin, userRole).filter(role -> names.contains(role.getName())).toList();
+        };
+
+        Assertions.assertThat(cache.getRoles(List.of("ADMIN"), loader)).containsExactly(admin);
+        Assertions.assertThat(cache.getRoles(List.of("ADMIN", "USER"), loader)).containsExactly(admin, userRole);
+        // Role không tồn tại → null để caller đọc DB
+        Assertions.assertThat(cache.getRoles(List.of("USER", "GHOST"), loader)).isNull();
+        Assertions.assertThat(requested).containsExactly(List.of("ADMIN"), List.of("USER"), List.of("GHOST"));
+
+        cache.evictByPermission("APPROVE_POST");
+        cache.getRoles(List.of("ADMIN", "USER"), loader);
+        Assertions.assertThat(requested).last().isEqualTo(List.of("ADMIN"));
+    }
+
+    @Test
+    void get_concurrentMisses_loadOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        List<Future<UserResponse>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.getByUsername("john12", () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return load();
+            })));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<UserResponse> result : results)
+            Assertions.assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(user);
+        Assertions.assertThat(loads.get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    private UserResponseCache.Versioned load() {
+        loads.incrementAndGet();
+        return new UserResponseCache.Versioned(user, 1L);
+    }
+}
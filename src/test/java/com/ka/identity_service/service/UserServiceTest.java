@@ -1,20 +1,32 @@
 package com.ka.identity_service.service;
 
+import com.ka.identity_service.configuration.AuthorityIndex;
+import com.ka.identity_service.configuration.BitsetJwtAuthenticationToken;
 import com.ka.identity_service.dto.request.UserCreationRequest;
 import com.ka.identity_service.dto.response.UserResponse;
 import com.ka.identity_service.entity.User;
 import com.ka.identity_service.exception.AppException;
+import com.ka.identity_service.repository.RoleRepository;
 import com.ka.identity_service.repository.UserRepository;
+import com.ka.identity_service.repository.projection.RolePermissionRow;
+import com.ka.identity_service.repository.projection.UserRoleRow;
+import com.ka.identity_service.repository.projection.UserRow;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.TestPropertySource;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -43,6 +55,19 @@ public class UserServiceTest {
     @MockBean
     private UserRepository userRepository;
 
+    @MockBean
+    private RoleRepository roleRepository;
+
+    // Bảng collection_version không có trong DB test
+    @MockBean
+    private CollectionVersions collectionVersions;
+
+    @Autowired
+    private AuthorityIndex authorityIndex;
+
+    @Autowired
+    private UserResponseCache userResponseCache;
+
     // Request giả lập dữ liệu client gửi lên API
     private UserCreationRequest request;
 
@@ -55,6 +80,9 @@ public class UserServiceTest {
     // Entity User giả lập dữ liệu lưu trong DB
     private User user;
 
+    // Projection của user, dùng cho các API đọc
+    private UserRow userRow;
+
     /**
      * @BeforeEach
      * Hàm này chạy trước MỖI test case
@@ -62,6 +90,9 @@ public class UserServiceTest {
      */
     @BeforeEach
     public void initData() {
+        // Cache dùng chung trong Spring Context, mỗi test bắt đầu với cache rỗng
+        userResponseCache.invalidateAll();
+
         dob = LocalDate.of(1990, 1, 1);
 
         // Giả lập dữ liệu người dùng gửi lên khi tạo user
@@ -91,6 +122,8 @@ public class UserServiceTest {
                 .password("12345678")
                 .dob(dob)
                 .build();
+
+        userRow = new UserRow("4055f7be-defd-4c5c-8195-ab7108ba1121", "john12", "john", "Doe", dob);
     }
 
     /**
@@ -155,8 +188,8 @@ public class UserServiceTest {
     void getMyInfo_valid_success() {
         // GIVEN: Thiết lập hành vi giả lập cho repository
         // Khi gọi hàm findByUsername với bất kỳ chuỗi nào, trả về một Optional chứa đối tượng user đã tạo sẵn
-        when(userRepository.findByUsername(anyString()))
-                .thenReturn(Optional.of(user));
+        when(userRepository.findRowByUsername(anyString()))
+                .thenReturn(Optional.of(userRow));
 
         // WHEN: Thực hiện gọi hàm nghiệp vụ cần kiểm thử
         var response = userService.getMyInfo();
@@ -168,13 +201,36 @@ public class UserServiceTest {
         Assertions.assertThat(response.getId()).isEqualTo("4055f7be-defd-4c5c-8195-ab7108ba1121");
     }
 
+    @Test
+    @WithMockUser(username = "john12")
+    void getMyInfo_withRoles_assembledFromProjections() {
+        // GIVEN: user có role ADMIN, role ADMIN có permission APPROVE_POST
+        when(userRepository.findRowByUsername(anyString()))
+                .thenReturn(Optional.of(userRow));
+        when(userRepository.findRoleRows(any()))
+                .thenReturn(List.of(new UserRoleRow(userRow.id(), "ADMIN", "Admin role")));
+        when(roleRepository.findPermissionRows(any()))
+                .thenReturn(List.of(new RolePermissionRow("ADMIN", "APPROVE_POST", "Approve post")));
+
+        // WHEN
+        var response = userService.getMyInfo();
+
+        // THEN: kết quả giống với khi map từ entity qua UserMapper
+        Assertions.assertThat(response.getLastName()).isEqualTo("john");
+        Assertions.assertThat(response.getRoles()).singleElement().satisfies(role -> {
+            Assertions.assertThat(role.getName()).isEqualTo("ADMIN");
+            Assertions.assertThat(role.getPermissions()).singleElement()
+                    .satisfies(permission -> Assertions.assertThat(permission.getName()).isEqualTo("APPROVE_POST"));
+        });
+    }
+
     @Test
 // Giả lập Security Context với username "john12"
     @WithMockUser(username = "john12")
     void getMyInfo_userNotFound_error() {
         // GIVEN: Thiết lập tình huống không tìm thấy người dùng trong cơ sở dữ liệu
         // Khi tìm kiếm theo username, trả về kết quả rỗng (null/empty)
-        when(userRepository.findByUsername(anyString()))
+        when(userRepository.findRowByUsername(anyString()))
                 .thenReturn(Optional.ofNullable(null));
 
         // WHEN & THEN: Thực thi hành động và kiểm tra ngoại lệ
@@ -185,4 +241,44 @@ public class UserServiceTest {
         // Xác nhận rằng mã lỗi (Error Code) trả về đúng là 1005 (thường là USER_NOT_EXISTED)
         Assertions.assertThat(exception.getErrorcode().getCode()).isEqualTo(1005);
     }
+
+    @Test
+// Authority APPROVE_POST thỏa @PreAuthorize("hasAuthority('APPROVE_POST')") của getUsers
+    @WithMockUser(username = "john12", authorities = "APPROVE_POST")
+    void getUsers_hasAuthority_success() {
+        when(userRepository.findAllRows()).thenReturn(List.of(userRow));
+
+        var response = userService.getUsers();
+
+        Assertions.assertThat(response).hasSize(1);
+    }
+
+    @Test
+    @WithMockUser(username = "john12", authorities = "ROLE_USER")
+    void getUsers_missingAuthority_denied() {
+        // Không có APPROVE_POST → bị chặn trước khi gọi repository
+        assertThrows(AccessDeniedException.class, () -> userService.getUsers());
+    }
+
+    @Test
+    void getUsers_bitsetAuthentication_checkedByBits() {
+        // GIVEN: Authentication được tạo từ JWT, authority kèm bitset
+        var jwt = Jwt.withTokenValue("token")
+                .header("alg", "HS512")
+                .subject("john12")
+                .claim("scope", "ROLE_ADMIN APPROVE_POST")
+                .build();
+        var authorities = List.<GrantedAuthority>of(
+                new SimpleGrantedAuthority("ROLE_ADMIN"), new SimpleGrantedAuthority("APPROVE_POST"));
+        var authentication = new BitsetJwtAuthenticationToken(jwt, authorities, authorityIndex.toBits(authorities));
+        when(userRepository.findAllRows()).thenReturn(List.of(userRow));
+
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        try {
+            // WHEN & THEN
+            Assertions.assertThat(userService.getUsers()).hasSize(1);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
 }
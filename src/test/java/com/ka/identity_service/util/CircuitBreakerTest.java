@@ -0,0 +1,82 @@
+package com.ka.identity_service.util;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test cho CircuitBreaker (không cần Spring Context), thời gian được điều khiển bằng clock giả.
+ */
+public class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, Duration.ofSeconds(5), clock::get);
+
+    @Test
+    void consecutiveFailures_openCircuit() {
+        // Lỗi xen kẽ thành công không làm mở breaker
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        Assertions.assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        Assertions.assertThat(circuitBreaker.tryAcquire()).isTrue();
+
+        circuitBreaker.onFailure();
+
+        Assertions.assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        Assertions.assertThat(circuitBreaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void afterOpenDuration_singleTrial() {
+        openCircuit();
+        advance(Duration.ofSeconds(4));
+        Assertions.assertThat(circuitBreaker.tryAcquire()).isFalse();
+
+        // Hết openDuration: chỉ một lời gọi thử được đi qua
+        advance(Duration.ofSeconds(1));
+        Assertions.assertThat(circuitBreaker.tryAcquire()).isTrue();
+        Assertions.assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        Assertions.assertThat(circuitBreaker.tryAcquire()).isFalse();
+
+        // Thử lỗi → mở lại thêm một openDuration
+        circuitBreaker.onFailure();
+        Assertions.assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        advance(Duration.ofSeconds(4));
+        Assertions.assertThat(circuitBreaker.tryAcquire()).isFalse();
+
+        // Thử thành công → đóng
+        advance(Duration.ofSeconds(1));
+        Assertions.assertThat(circuitBreaker.tryAcquire()).isTrue();
+        circuitBreaker.onSuccess();
+        Assertions.assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        Assertions.assertThat(circuitBreaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failingFor_measuredFromFirstFailure() {
+        Assertions.assertThat(circuitBreaker.failingFor()).isEqualTo(Duration.ZERO);
+
+        circuitBreaker.onFailure();
+        advance(Duration.ofSeconds(2));
+        openCircuit();
+        advance(Duration.ofSeconds(10));
+        Assertions.assertThat(circuitBreaker.failingFor()).isEqualTo(Duration.ofSeconds(12));
+
+        circuitBreaker.onSuccess();
+        Assertions.assertThat(circuitBreaker.failingFor()).isEqualTo(Duration.ZERO);
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 3; i++)
+            circuitBreaker.onFailure();
+    }
+
+    private void advance(Duration duration) {
+        clock.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,99 @@
+package com.ka.identity_service.util;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test cho SingleFlight (không cần Spring Context).
+ */
+public class SingleFlightTest {
+
+    @Test
+    void execute_concurrentSameKey_loaderRunsOnce() throws Exception {
+        // ===== GIVEN =====
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // ===== WHEN =====
+        // 8 thread cùng gọi một key, loader bị chặn tới khi tất cả đã vào hàng chờ
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 42;
+            })));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        // ===== THEN =====
+        for (Future<Integer> result : results)
+            Assertions.assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+        Assertions.assertThat(loads.get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    @Test
+    void execute_withinGraceWindow_returnsSameResult() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>(Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+
+        int first = singleFlight.execute("key", loads::incrementAndGet);
+        int retry = singleFlight.execute("key", loads::incrementAndGet);
+
+        Assertions.assertThat(retry).isEqualTo(first);
+        Assertions.assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void execute_loaderFails_errorNotRetained() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>(Duration.ofMinutes(1));
+
+        assertThrows(IllegalStateException.class,
+                () -> singleFlight.execute("key", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        Assertions.assertThat(singleFlight.execute("key", () -> 7)).isEqualTo(7);
+    }
+
+    @Test
+    void execute_leaderTooSlow_followerRunsOwnLoader() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // Leader bị chặn lâu hơn maxWait của thread sau
+        Future<Integer> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        }));
+        Thread.sleep(100);
+
+        int follower = singleFlight.execute("key", () -> 2, Duration.ofMillis(50));
+        release.countDown();
+
+        Assertions.assertThat(follower).isEqualTo(2);
+        Assertions.assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        executor.shutdown();
+    }
+}